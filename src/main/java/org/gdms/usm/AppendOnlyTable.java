@@ -0,0 +1,221 @@
+/**
+ *
+ * Gdms-USM is a library dedicated to multi-agent simulation for modeling urban sprawl.
+ * It is based on the GDMS library. It uses the OrbisGIS renderer to display results.
+ *
+ * This version is developed at French IRSTV Institute and at LIENSs UMR 7266 laboratory
+ * (http://lienss.univ-larochelle.fr/) as part of the VegDUD project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-09-VILL-0007.
+ *
+ * Gdms-USM is distributed under GPL 3 license. It is maintained by the "Atelier SIG" team of
+ * the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Gdms-USM is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Gdms-USM is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Gdms-USM. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://trac.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.usm;
+
+import java.io.File;
+import java.io.IOException;
+import org.gdms.data.DataSource;
+import org.gdms.data.DataSourceCreationException;
+import org.gdms.data.DataSourceFactory;
+import org.gdms.data.NoSuchTableException;
+import org.gdms.data.schema.Metadata;
+import org.gdms.data.values.Value;
+import org.gdms.driver.DriverException;
+import org.gdms.driver.gdms.GdmsWriter;
+
+/**
+ * An output table which only grows during the simulation.
+ * New rows are appended to a writer kept open between steps, and the row indexes,
+ * extent and row count are only written when the table is checkpointed. A checkpoint
+ * finalizes the rows appended since the previous one into a new segment : the first
+ * segment is the table file itself, registered under the table name, and the next
+ * ones are registered as name_1, name_2... so that rows are never copied at a checkpoint.
+ * Merging copies the later segments into the table file once, which closeOutputDatabase
+ * does at the end of the simulation : until then, the table name only gives the rows of
+ * the first segment.
+ * Opening, checkpointing and merging use the data source factory, so they must be called
+ * from the simulation thread ; appending only writes to the open writer, and can be done
+ * from another thread once the table is open.
+ * @author Thomas Salliou
+ */
+public final class AppendOnlyTable {
+
+    private final String name;
+    private final String outputPath;
+    private final File tempFile;
+    private final Metadata metadata;
+    private final DataSourceFactory dsf;
+    private GdmsWriter writer;
+    private int segmentCount;
+    private long finalizedRowCount;
+    private long pendingRowCount;
+
+    /**
+     * Builds a new AppendOnlyTable. Nothing is written until the first append or checkpoint.
+     * @param name the name of the source in the data source factory
+     * @param outputPath the output folder
+     * @param m the metadata of the table
+     * @param dsf the data source factory
+     */
+    public AppendOnlyTable(String name, String outputPath, Metadata m, DataSourceFactory dsf) {
+        this.name = name;
+        this.outputPath = outputPath;
+        this.tempFile = new File(outputPath + "/" + name + "_temp.gdms");
+        this.metadata = m;
+        this.dsf = dsf;
+        this.writer = null;
+        this.segmentCount = 0;
+        this.finalizedRowCount = 0;
+        this.pendingRowCount = 0;
+    }
+
+    /**
+     * Opens a writer for the next segment if needed. Finalized rows are not read.
+     */
+    public void open() throws DriverException, IOException {
+        if (writer == null) {
+            writer = new GdmsWriter(tempFile);
+            writer.writeMetadata(0, metadata);
+        }
+    }
+
+    /**
+     * Appends a row to the table, which must be open.
+     * @param row the values of the new row
+     * @throws IllegalStateException if the table is not open
+     */
+    public void append(Value[] row) throws DriverException, IOException {
+        if (writer == null) {
+            throw new IllegalStateException("The table " + name + " is not open.");
+        }
+        writer.addValues(row);
+        pendingRowCount++;
+    }
+
+    /**
+     * Finalizes the rows appended since the last checkpoint into a new segment and registers
+     * it, so that it can be read by the data source factory. Nothing is added without new rows,
+     * and as long as the table has no rows, the first segment is replaced rather than followed.
+     */
+    public void checkpoint() throws DriverException, IOException {
+        if (writer == null) {
+            if (segmentCount > 0) {
+                return;
+            }
+            open();
+        }
+        writer.writeRowIndexes();
+        writer.writeExtent();
+        writer.writeWritenRowCount();
+        writer.close();
+        writer = null;
+        if (pendingRowCount == 0 && segmentCount > 0) {
+            if (!tempFile.delete()) {
+                throw new IOException("Cannot delete " + tempFile);
+            }
+            return;
+        }
+        int segment = finalizedRowCount == 0 ? 0 : segmentCount;
+        if (segment < segmentCount) {
+            dsf.getSourceManager().delete(getSegmentName(segment));
+        }
+        File file = getSegmentFile(segment);
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot replace " + file);
+        }
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("Cannot rename " + tempFile + " to " + file);
+        }
+        dsf.getSourceManager().register(getSegmentName(segment), file);
+        segmentCount = segment + 1;
+        finalizedRowCount += pendingRowCount;
+        pendingRowCount = 0;
+    }
+
+    /**
+     * Checkpoints the table, then copies the rows of the later segments into the table file,
+     * which then holds every row under the table name. Each row is copied once.
+     */
+    public void merge() throws NoSuchTableException, DataSourceCreationException, DriverException, IOException {
+        checkpoint();
+        if (segmentCount < 2) {
+            return;
+        }
+        GdmsWriter merged = new GdmsWriter(tempFile);
+        merged.writeMetadata(0, metadata);
+        for (int k = 0; k < segmentCount; k++) {
+            DataSource ds = dsf.getDataSource(getSegmentName(k));
+            ds.open();
+            for (long i = 0; i < ds.getRowCount(); i++) {
+                merged.addValues(ds.getRow(i));
+            }
+            ds.close();
+        }
+        merged.writeRowIndexes();
+        merged.writeExtent();
+        merged.writeWritenRowCount();
+        merged.close();
+        for (int k = 0; k < segmentCount; k++) {
+            dsf.getSourceManager().delete(getSegmentName(k));
+            if (!getSegmentFile(k).delete()) {
+                throw new IOException("Cannot delete " + getSegmentFile(k));
+            }
+        }
+        if (!tempFile.renameTo(getSegmentFile(0))) {
+            throw new IOException("Cannot rename " + tempFile + " to " + getSegmentFile(0));
+        }
+        dsf.getSourceManager().register(name, getSegmentFile(0));
+        segmentCount = 1;
+    }
+
+    /**
+     * @param segment the segment number
+     * @return the source name of the segment : the table name for the first one
+     */
+    public String getSegmentName(int segment) {
+        return segment == 0 ? name : name + "_" + segment;
+    }
+
+    private File getSegmentFile(int segment) {
+        return new File(outputPath + "/" + getSegmentName(segment) + ".gdms");
+    }
+
+    /**
+     * @return the number of finalized segments
+     */
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * @return true if rows have been appended since the last checkpoint
+     */
+    public boolean isDirty() {
+        return writer != null;
+    }
+
+    /**
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+}
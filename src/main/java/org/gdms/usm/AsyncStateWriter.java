@@ -0,0 +1,175 @@
+/**
+ *
+ * Gdms-USM is a library dedicated to multi-agent simulation for modeling urban sprawl.
+ * It is based on the GDMS library. It uses the OrbisGIS renderer to display results.
+ *
+ * This version is developed at French IRSTV Institute and at LIENSs UMR 7266 laboratory
+ * (http://lienss.univ-larochelle.fr/) as part of the VegDUD project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-09-VILL-0007.
+ *
+ * Gdms-USM is distributed under GPL 3 license. It is maintained by the "Atelier SIG" team of
+ * the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Gdms-USM is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Gdms-USM is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Gdms-USM. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://trac.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.usm;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes state snapshots into the output database from a background thread,
+ * so that saving a step overlaps the computation of the next one.
+ * The queue is bounded : when the writer falls behind, submit blocks the simulation.
+ * @author Thomas Salliou
+ */
+public final class AsyncStateWriter implements Runnable {
+
+    private final Manager manager;
+    private final BlockingQueue<StateSnapshot> queue;
+    private final Thread thread;
+    private final Object lock;
+    private int pending;
+    private boolean closed;
+    private Exception failure;
+
+    /**
+     * Builds and starts a new AsyncStateWriter.
+     * @param m the manager owning the output tables
+     * @param queueDepth the maximum number of snapshots waiting to be written
+     */
+    public AsyncStateWriter(Manager m, int queueDepth) {
+        this.manager = m;
+        this.queue = new ArrayBlockingQueue<StateSnapshot>(queueDepth);
+        this.lock = new Object();
+        this.pending = 0;
+        this.closed = false;
+        this.failure = null;
+        this.thread = new Thread(this, "gdms-usm state writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Hands a snapshot to the writer thread. Blocks while the queue is full.
+     * @param s the snapshot to write
+     * @throws IOException if a previous snapshot could not be written
+     */
+    public void submit(StateSnapshot s) throws IOException {
+        checkFailure();
+        synchronized (lock) {
+            pending++;
+        }
+        try {
+            queue.put(s);
+        } catch (InterruptedException ex) {
+            synchronized (lock) {
+                pending--;
+            }
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the state writer.", ex);
+        }
+    }
+
+    /**
+     * Waits until every submitted snapshot is written.
+     * @throws IOException if a snapshot could not be written
+     */
+    public void await() throws IOException {
+        synchronized (lock) {
+            while (pending > 0) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for the state writer.", ex);
+                }
+            }
+        }
+        checkFailure();
+    }
+
+    /**
+     * Waits for the pending snapshots and stops the writer thread.
+     * @throws IOException if a snapshot could not be written
+     */
+    public void close() throws IOException {
+        await();
+        synchronized (lock) {
+            closed = true;
+        }
+        thread.interrupt();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            StateSnapshot s;
+            try {
+                s = queue.take();
+            } catch (InterruptedException ex) {
+                synchronized (lock) {
+                    if (closed) {
+                        return;
+                    }
+                }
+                continue;
+            }
+            try {
+                if (getFailure() == null) {
+                    manager.writeSnapshot(s);
+                }
+            } catch (Exception ex) {
+                Logger.getLogger(AsyncStateWriter.class.getName()).log(Level.SEVERE, null, ex);
+                synchronized (lock) {
+                    failure = ex;
+                }
+            }
+            synchronized (lock) {
+                pending--;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return the number of snapshots submitted and not yet written
+     */
+    public int getPending() {
+        synchronized (lock) {
+            return pending;
+        }
+    }
+
+    private Exception getFailure() {
+        synchronized (lock) {
+            return failure;
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        Exception e = getFailure();
+        if (e != null) {
+            throw new IOException("Could not write the simulation state.", e);
+        }
+    }
+}
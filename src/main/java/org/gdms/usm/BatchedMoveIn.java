@@ -0,0 +1,219 @@
+/**
+ *
+ * Gdms-USM is a library dedicated to multi-agent simulation for modeling urban sprawl.
+ * It is based on the GDMS library. It uses the OrbisGIS renderer to display results.
+ *
+ * This version is developed at French IRSTV Institute and at LIENSs UMR 7266 laboratory
+ * (http://lienss.univ-larochelle.fr/) as part of the VegDUD project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-09-VILL-0007.
+ *
+ * Gdms-USM is distributed under GPL 3 license. It is maintained by the "Atelier SIG" team of
+ * the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Gdms-USM is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Gdms-USM is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Gdms-USM. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://trac.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.usm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Stack;
+
+/**
+ * Moves the homeless households in, as GaussParcelSelector would.
+ * The households of a class share the same parcel ranking, so the candidate ranking is
+ * built once per class and per round, and each household only draws its rank in it.
+ * The households are processed in the homeless order, whatever their class, so that
+ * no class gets the parcels first.
+ * The number of candidates, which scales the drawn rank, is counted at the start of the
+ * round ; the parcel of this rank is then looked for among the parcels still open, so that
+ * moves are applied in turn against the live parcels. A household running out of candidates
+ * this way tries again in the next round, with fresh rankings.
+ * Parcels never empty during a round, so a parcel found full is skipped by the later walks
+ * of its class ranking, through pointers to the next parcel not known to be full.
+ * The candidates are counted once per round, so the result is statistically equivalent to
+ * the sequential phase rather than identical.
+ * @author Thomas Salliou
+ */
+public final class BatchedMoveIn {
+
+    private static final int MAX_ROUNDS = 8;
+    private final Manager manager;
+    private final double[] buildTypeAreas;
+
+    /**
+     * Builds a BatchedMoveIn.
+     * @param m the manager, whose parcel table must hold every parcel
+     */
+    public BatchedMoveIn(Manager m) {
+        this.manager = m;
+        this.buildTypeAreas = new double[NearbyBuildTypeCalculator.BUILD_TYPE_SLOTS];
+    }
+
+    /**
+     * Moves in the homeless households.
+     * @param homeless the homeless households ; those still homeless after the last round
+     * are left in it, to be moved in one by one
+     * @return the households which found no candidate parcel, step listeners being told
+     */
+    public List<Household> moveIn(Stack<Household> homeless) {
+        List<Household> households = new ArrayList<Household>(homeless.size());
+        while (!homeless.isEmpty()) {
+            households.add(homeless.pop());
+        }
+        
+        List<Household> lost = new ArrayList<Household>();
+        for (int round = 0; round < MAX_ROUNDS && !households.isEmpty(); round++) {
+            households = moveInRound(households, lost);
+        }
+        
+        for (int k = households.size() - 1; k >= 0; k--) {
+            homeless.push(households.get(k));
+        }
+        return lost;
+    }
+
+    /**
+     * Gets the parcels which are candidates whatever the household : not business parks,
+     * not full, and not houses with big gardens without upgrade potential.
+     */
+    private BitSet openParcels() {
+        List<Parcel> parcels = manager.getParcelList();
+        ParcelTable table = manager.getParcelTable();
+        BitSet open = new BitSet(parcels.size());
+        for (int i = table.nextVacant(0); i >= 0; i = table.nextVacant(i + 1)) {
+            if (!(table.getBuildType(i) == 1 && parcels.get(i).getUpgradePotential(buildTypeAreas) < 0.1)) {
+                open.set(i);
+            }
+        }
+        return open;
+    }
+
+    /**
+     * Moves in the households in the homeless order, whatever their class, and returns
+     * those who have to try again.
+     */
+    private List<Household> moveInRound(List<Household> households, List<Household> lost) {
+        List<Parcel> parcels = manager.getParcelList();
+        ParcelTable table = manager.getParcelTable();
+        Random generator = manager.getRandom(RandomStreams.MOVING_IN);
+        
+        //for each class, open parcels by ascending score, and their average wealths at the start of the round
+        BitSet open = openParcels();
+        int[][] ranked = new int[Household.CLASS_COUNT][];
+        int[][] sortedWealths = new int[Household.CLASS_COUNT][];
+        int[][] nextOpen = new int[Household.CLASS_COUNT][];
+        for (Household h : households) {
+            int c = h.getHouseholdClass();
+            if (ranked[c] == null) {
+                int[] order = manager.getScoreCache().getOrder(h);
+                ranked[c] = new int[open.cardinality()];
+                sortedWealths[c] = new int[ranked[c].length];
+                int count = 0;
+                for (int k = 0; k < order.length; k++) {
+                    if (open.get(order[k])) {
+                        sortedWealths[c][count] = table.getAverageWealth(order[k]);
+                        ranked[c][count++] = order[k];
+                    }
+                }
+                Arrays.sort(sortedWealths[c]);
+                nextOpen[c] = new int[count];
+                for (int k = 0; k < count; k++) {
+                    nextOpen[c][k] = k;
+                }
+            }
+        }
+        
+        List<Household> deferred = new ArrayList<Household>();
+        for (Household h : households) {
+            int[] classRanked = ranked[h.getHouseholdClass()];
+            int[] classNextOpen = nextOpen[h.getHouseholdClass()];
+            int wealth = h.getWealth();
+            int size = affordableCount(sortedWealths[h.getHouseholdClass()], wealth);
+            if (size == 0) {
+                for (StepListener sl : manager.getStep().getListeners()) {
+                    sl.householdDisappeared(h);
+                }
+                lost.add(h);
+                continue;
+            }
+            int rank = Math.max(0, - (int) (Math.abs(generator.nextGaussian())*manager.getGaussDeviation()*size) + size - 1);
+            
+            //walks down from the best parcel, skipping those which got full or too expensive this round
+            int target = -1;
+            int seen = size;
+            for (int k = findOpen(classNextOpen, classRanked.length - 1); k >= 0; k = findOpen(classNextOpen, k - 1)) {
+                int i = classRanked[k];
+                if (!table.isVacant(i)) {
+                    classNextOpen[k] = k - 1;
+                } else if (wealth > 0.66*table.getAverageWealth(i)) {
+                    seen--;
+                    if (seen == rank) {
+                        target = i;
+                        break;
+                    }
+                }
+            }
+            
+            if (target >= 0) {
+                h.moveIn(parcels.get(target));
+            } else {
+                deferred.add(h);
+            }
+        }
+        return deferred;
+    }
+
+    /**
+     * Finds the highest position, up to the given one, of a parcel not known to be full,
+     * shortening the pointers walked through.
+     * @return the position, or -1 if there is none
+     */
+    private static int findOpen(int[] nextOpen, int k) {
+        int open = k;
+        while (open >= 0 && nextOpen[open] != open) {
+            open = nextOpen[open];
+        }
+        while (k > open) {
+            int next = nextOpen[k];
+            nextOpen[k] = open;
+            k = next;
+        }
+        return open;
+    }
+
+    /**
+     * Counts the average wealths, sorted in ascending order, affordable for the given wealth.
+     */
+    private static int affordableCount(int[] sortedWealths, int wealth) {
+        int low = 0;
+        int high = sortedWealths.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (wealth > 0.66*sortedWealths[middle]) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -55,6 +55,10 @@ public class BufferBuildVariable extends NearbyBuildTypeCalculator {
 
         @Override
         public void setNeighbours() throws NoSuchTableException, DataSourceCreationException, DriverException {
+            if (buildNeighbourGraph(neighbours)) {
+                return;
+            }
+
             DataSource sds = getManager().getDsf().getDataSource("Plot");
             sds.open();
 
@@ -87,21 +91,7 @@ public class BufferBuildVariable extends NearbyBuildTypeCalculator {
 
                 neighbours.put(p, intersectedParcels);
             }
-        }
-
-        @Override
-        public Map<Integer, Double> calculate(Parcel p) throws NoSuchTableException, DataSourceCreationException, DriverException {
-            Parcel[] theNeighbours = this.getNeighbours(p);
-            HashMap<Integer, Double> buildTypeAreas = new HashMap<Integer, Double>();
-            for (int i = 0; i < theNeighbours.length; i++) {
-                if (buildTypeAreas.get(theNeighbours[i].getBuildType()) != null) {
-                    buildTypeAreas.put(theNeighbours[i].getBuildType(), buildTypeAreas.get(theNeighbours[i].getBuildType()) + theNeighbours[i].getTheGeom().getArea());
-                }
-                else {
-                    buildTypeAreas.put(theNeighbours[i].getBuildType(), theNeighbours[i].getTheGeom().getArea());
-                }
-            }
-            return buildTypeAreas;
+            initializeNearbyBuildTypeTables();
         }
 
         @Override
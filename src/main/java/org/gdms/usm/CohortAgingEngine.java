@@ -0,0 +1,192 @@
+/**
+ *
+ * Gdms-USM is a library dedicated to multi-agent simulation for modeling urban sprawl.
+ * It is based on the GDMS library. It uses the OrbisGIS renderer to display results.
+ *
+ * This version is developed at French IRSTV Institute and at LIENSs UMR 7266 laboratory
+ * (http://lienss.univ-larochelle.fr/) as part of the VegDUD project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-09-VILL-0007.
+ *
+ * Gdms-USM is distributed under GPL 3 license. It is maintained by the "Atelier SIG" team of
+ * the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Gdms-USM is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Gdms-USM is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Gdms-USM. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://trac.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.usm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Ages the housed households by cohorts of birth year.
+ * An attached household age is the engine year minus its birth year, so a new year
+ * needs no write per household, and births and deaths only visit their cohorts.
+ * The wealth still grows every year up to 60 years old, and not linearly because of
+ * the rounding, so a new year visits every household under 60 to tell its parcel,
+ * for its total wealth to stay exact : advance is linear in those households, the
+ * older ones being skipped.
+ * A cohort is a growable array where each household remembers its slot, a removed
+ * household being replaced by the last one.
+ * @author Thomas Salliou
+ */
+public final class CohortAgingEngine {
+
+    private int year;
+    private int size;
+    private final TreeMap<Integer, Cohort> cohorts;
+
+    /**
+     * Builds an engine at year 0 without any household.
+     */
+    public CohortAgingEngine() {
+        this.year = 0;
+        this.size = 0;
+        this.cohorts = new TreeMap<Integer, Cohort>();
+    }
+
+    /**
+     * @return the current year of the engine
+     */
+    public int getYear() {
+        return year;
+    }
+
+    /**
+     * Makes every attached household one year older, and updates the total wealth of
+     * the parcels of those whose wealth changed.
+     */
+    public void advance() {
+        year++;
+        for (Cohort cohort : cohorts.tailMap(Integer.valueOf(year - 60)).values()) {
+            for (int k = 0; k < cohort.size; k++) {
+                Household h = cohort.members[k];
+                int oldWealth = h.getWealth(h.getAge() - 1);
+                if (h.getHousingPlot() != null && oldWealth != h.getWealth()) {
+                    h.getHousingPlot().wealthChanged(h, oldWealth);
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes a household age with the engine, keeping its current age.
+     * @param h the household
+     */
+    void attach(Household h) {
+        if (h.getAgingEngine() == this) {
+            return;
+        }
+        h.attach(this);
+        Integer birthYear = Integer.valueOf(h.getBirthYear());
+        Cohort cohort = cohorts.get(birthYear);
+        if (cohort == null) {
+            cohort = new Cohort();
+            cohorts.put(birthYear, cohort);
+        }
+        cohort.add(h);
+        size++;
+    }
+
+    /**
+     * Stops aging a household, which keeps its current age.
+     * @param h the household
+     */
+    void detach(Household h) {
+        if (h.getAgingEngine() != this) {
+            return;
+        }
+        Integer birthYear = Integer.valueOf(h.getBirthYear());
+        Cohort cohort = cohorts.get(birthYear);
+        cohort.remove(h);
+        if (cohort.size == 0) {
+            cohorts.remove(birthYear);
+        }
+        size--;
+        h.detach();
+    }
+
+    /**
+     * Gets the attached households of a given age.
+     * @param age the age
+     * @return a copy of the cohort
+     */
+    public List<Household> getCohort(int age) {
+        List<Household> households = new ArrayList<Household>();
+        Cohort cohort = cohorts.get(Integer.valueOf(year - age));
+        if (cohort != null) {
+            cohort.addTo(households);
+        }
+        return households;
+    }
+
+    /**
+     * Gets the attached households of at least a given age.
+     * @param age the minimum age
+     * @return a copy of the cohorts, oldest cohorts first
+     */
+    public List<Household> getCohortsAtLeast(int age) {
+        List<Household> households = new ArrayList<Household>();
+        for (Cohort cohort : cohorts.headMap(Integer.valueOf(year - age + 1)).values()) {
+            cohort.addTo(households);
+        }
+        return households;
+    }
+
+    /**
+     * @return the number of attached households
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The households born the same year.
+     */
+    private static final class Cohort {
+
+        private Household[] members = new Household[4];
+        private int size;
+
+        void add(Household h) {
+            if (size == members.length) {
+                members = Arrays.copyOf(members, size * 2);
+            }
+            members[size] = h;
+            h.setCohortSlot(size);
+            size++;
+        }
+
+        void remove(Household h) {
+            int i = h.getCohortSlot();
+            size--;
+            if (i != size) {
+                members[i] = members[size];
+                members[i].setCohortSlot(i);
+            }
+            members[size] = null;
+            h.setCohortSlot(-1);
+        }
+
+        void addTo(List<Household> households) {
+            households.addAll(Arrays.asList(members).subList(0, size));
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/**
+ *
+ * Gdms-USM is a library dedicated to multi-agent simulation for modeling urban sprawl.
+ * It is based on the GDMS library. It uses the OrbisGIS renderer to display results.
+ *
+ * This version is developed at French IRSTV Institute and at LIENSs UMR 7266 laboratory
+ * (http://lienss.univ-larochelle.fr/) as part of the VegDUD project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-09-VILL-0007.
+ *
+ * Gdms-USM is distributed under GPL 3 license. It is maintained by the "Atelier SIG" team of
+ * the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Gdms-USM is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Gdms-USM is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Gdms-USM. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://trac.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.usm;
+
+import java.util.Arrays;
+
+/**
+ * Stores the dissatisfaction memories of all the households in flat arrays.
+ * Each household owns a slot, found from its id, made of a ring buffer of
+ * householdMemory values in a shared double array, with its head, count and sum.
+ * Slots of deleted households are reused, and the arrays grow by chunks.
+ * @author Thomas Salliou
+ */
+public final class DissatisfactionStore {
+
+    private static final int CHUNK = 1024;
+    private final int memory;
+    private double[] values;
+    private int[] heads;
+    private int[] counts;
+    private double[] sums;
+    private int[] slotOfId;
+    private int[] freeSlots;
+    private int freeCount;
+    private int usedSlots;
+    private int size;
+
+    /**
+     * Builds an empty store.
+     * @param memory the number of dissatisfaction values remembered by each household
+     */
+    public DissatisfactionStore(int memory) {
+        this.memory = memory;
+        this.values = new double[CHUNK * memory];
+        this.heads = new int[CHUNK];
+        this.counts = new int[CHUNK];
+        this.sums = new double[CHUNK];
+        this.slotOfId = new int[CHUNK];
+        Arrays.fill(slotOfId, -1);
+        this.freeSlots = new int[CHUNK];
+        this.freeCount = 0;
+        this.usedSlots = 0;
+        this.size = 0;
+    }
+
+    /**
+     * @return the number of values remembered by each household
+     */
+    public int getMemory() {
+        return memory;
+    }
+
+    /**
+     * Copies the store with another memory length, keeping the most recent values of each household.
+     * @param newMemory the number of dissatisfaction values remembered by each household in the copy
+     * @return the copy
+     */
+    public DissatisfactionStore copyWithMemory(int newMemory) {
+        DissatisfactionStore copy = new DissatisfactionStore(newMemory);
+        for (int id = 0; id < slotOfId.length; id++) {
+            if (slotOfId[id] >= 0) {
+                copy.add(id);
+                int count = counts[slotOfId[id]];
+                for (int i = Math.max(0, count - newMemory); i < count; i++) {
+                    copy.offer(id, get(id, i));
+                }
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * @return the number of households in the store
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param id a household id
+     * @return true if the household has a memory in the store
+     */
+    public boolean contains(int id) {
+        return id >= 0 && id < slotOfId.length && slotOfId[id] >= 0;
+    }
+
+    /**
+     * Gives an empty memory to a household, reusing a free slot if there is one.
+     * @param id the household id
+     */
+    public void add(int id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Household id must not be negative.");
+        }
+        if (id >= slotOfId.length) {
+            int oldLength = slotOfId.length;
+            slotOfId = Arrays.copyOf(slotOfId, (id / CHUNK + 1) * CHUNK);
+            Arrays.fill(slotOfId, oldLength, slotOfId.length, -1);
+        }
+        int slot = slotOfId[id];
+        if (slot < 0) {
+            if (freeCount > 0) {
+                slot = freeSlots[--freeCount];
+            } else {
+                if (usedSlots == heads.length) {
+                    grow();
+                }
+                slot = usedSlots++;
+            }
+            slotOfId[id] = slot;
+            size++;
+        }
+        clearSlot(slot);
+    }
+
+    /**
+     * Frees the memory of a household.
+     * @param id the household id
+     */
+    public void remove(int id) {
+        if (!contains(id)) {
+            return;
+        }
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlots.length + CHUNK);
+        }
+        freeSlots[freeCount++] = slotOfId[id];
+        slotOfId[id] = -1;
+        size--;
+    }
+
+    /**
+     * Adds a value to the memory of a household, forgetting the oldest one if it is full.
+     * @param id the household id
+     * @param value the dissatisfaction value
+     */
+    public void offer(int id, double value) {
+        if (memory == 0) {
+            return;
+        }
+        int slot = slotOf(id);
+        int base = slot * memory;
+        if (counts[slot] == memory) {
+            int head = heads[slot];
+            sums[slot] -= values[base + head];
+            values[base + head] = value;
+            head++;
+            if (head == memory) {
+                head = 0;
+                heads[slot] = head;
+                recomputeSum(slot);
+            } else {
+                heads[slot] = head;
+                sums[slot] += value;
+            }
+        } else {
+            values[base + position(slot, counts[slot])] = value;
+            counts[slot]++;
+            sums[slot] += value;
+        }
+    }
+
+    /**
+     * @param id the household id
+     * @return the sum of the remembered values
+     */
+    public double getSum(int id) {
+        return sums[slotOf(id)];
+    }
+
+    /**
+     * @param id the household id
+     * @return the number of remembered values
+     */
+    public int getCount(int id) {
+        return counts[slotOf(id)];
+    }
+
+    /**
+     * @param id the household id
+     * @param i the position, 0 being the oldest value
+     * @return the remembered value at that position
+     */
+    public double get(int id, int i) {
+        int slot = slotOf(id);
+        if (i < 0 || i >= counts[slot]) {
+            throw new IndexOutOfBoundsException("Index " + i + " out of " + counts[slot]);
+        }
+        return values[slot * memory + position(slot, i)];
+    }
+
+    /**
+     * Forgets every value remembered by a household.
+     * @param id the household id
+     */
+    public void clear(int id) {
+        clearSlot(slotOf(id));
+    }
+
+    private int slotOf(int id) {
+        if (!contains(id)) {
+            throw new IllegalArgumentException("Household " + id + " has no dissatisfaction memory.");
+        }
+        return slotOfId[id];
+    }
+
+    private int position(int slot, int i) {
+        int p = heads[slot] + i;
+        return p < memory ? p : p - memory;
+    }
+
+    private void clearSlot(int slot) {
+        heads[slot] = 0;
+        counts[slot] = 0;
+        sums[slot] = 0;
+    }
+
+    private void recomputeSum(int slot) {
+        int base = slot * memory;
+        double s = 0;
+        for (int k = 0; k < counts[slot]; k++) {
+            s += values[base + position(slot, k)];
+        }
+        sums[slot] = s;
+    }
+
+    private void grow() {
+        int capacity = heads.length + CHUNK;
+        values = Arrays.copyOf(values, capacity * memory);
+        heads = Arrays.copyOf(heads, capacity);
+        counts = Arrays.copyOf(counts, capacity);
+        sums = Arrays.copyOf(sums, capacity);
+    }
+}
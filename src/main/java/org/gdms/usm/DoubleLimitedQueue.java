@@ -0,0 +1,236 @@
+/**
+ *
+ * Gdms-USM is a library dedicated to multi-agent simulation for modeling urban sprawl.
+ * It is based on the GDMS library. It uses the OrbisGIS renderer to display results.
+ *
+ * This version is developed at French IRSTV Institute and at LIENSs UMR 7266 laboratory
+ * (http://lienss.univ-larochelle.fr/) as part of the VegDUD project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-09-VILL-0007.
+ *
+ * Gdms-USM is distributed under GPL 3 license. It is maintained by the "Atelier SIG" team of
+ * the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Gdms-USM is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Gdms-USM is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Gdms-USM. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://trac.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.usm;
+
+import java.util.AbstractQueue;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A LimitedQueue of primitive doubles, stored in a ring buffer.
+ * If an element has to be added, it checks if the Queue is full.
+ * In that case, it will automatically overwrite the oldest element.
+ * The sum of the elements is kept up to date, and recomputed exactly each time
+ * the ring buffer wraps around so that rounding errors do not accumulate.
+ * @author Thomas Salliou
+ */
+public final class DoubleLimitedQueue extends AbstractQueue<Double> {
+
+    private final double[] values;
+    private int head;
+    private int size;
+    private double sum;
+    private int modCount;
+
+    /**
+     * Builds a new DoubleLimitedQueue with an integer limit.
+     * @param s the limit
+     */
+    public DoubleLimitedQueue(int s) {
+        this.values = new double[s];
+        this.head = 0;
+        this.size = 0;
+        this.sum = 0;
+    }
+
+    @Override
+    public Iterator<Double> iterator() {
+        return new DoubleLimitedQueueIterator();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean offer(Double e) {
+        return offerDouble(e.doubleValue());
+    }
+
+    /**
+     * Adds a value without boxing it.
+     * If full, overwrites the oldest element. If not, adds the new element and increments the size.
+     * @param e the value to be added
+     * @return a boolean
+     */
+    public boolean offerDouble(double e) {
+        if (values.length == 0) {
+            return true;
+        }
+        modCount++;
+        if (size == values.length) {
+            sum -= values[head];
+            values[head] = e;
+            head++;
+            if (head == values.length) {
+                head = 0;
+                recomputeSum();
+            } else {
+                sum += e;
+            }
+        } else {
+            values[slot(size)] = e;
+            size++;
+            sum += e;
+        }
+        return true;
+    }
+
+    /**
+     * Retrieves and removes the head of the limited queue (the first element).
+     * Consequently decreases the size of it.
+     * @return the first element of the limited queue, or null if it is empty.
+     */
+    @Override
+    public Double poll() {
+        if (size == 0) {
+            return null;
+        }
+        double e = values[head];
+        removeAt(0);
+        return e;
+    }
+
+    /**
+     * Retrieves the head of the limited queue without removing it.
+     * @return the first element of the limited queue, or null if it is empty.
+     */
+    @Override
+    public Double peek() {
+        if (size == 0) {
+            return null;
+        }
+        return values[head];
+    }
+
+    /**
+     * @param i the position, 0 being the oldest element
+     * @return the element at that position
+     */
+    public double get(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index " + i + " out of " + size);
+        }
+        return values[slot(i)];
+    }
+
+    /**
+     * @return the sum of the elements
+     */
+    public double getSum() {
+        return sum;
+    }
+
+    @Override
+    public void clear() {
+        modCount++;
+        head = 0;
+        size = 0;
+        sum = 0;
+    }
+
+    /**
+     * @return the size
+     */
+    public int getSize() {
+        return size;
+    }
+
+    private int slot(int i) {
+        int s = head + i;
+        return s < values.length ? s : s - values.length;
+    }
+
+    private void removeAt(int i) {
+        modCount++;
+        for (int k = i; k < size - 1; k++) {
+            values[slot(k)] = values[slot(k + 1)];
+        }
+        size--;
+        recomputeSum();
+    }
+
+    private void recomputeSum() {
+        double s = 0;
+        for (int k = 0; k < size; k++) {
+            s += values[slot(k)];
+        }
+        sum = s;
+    }
+
+    class DoubleLimitedQueueIterator implements Iterator<Double> {
+
+        private int next;
+        private int last;
+        private int expectedModCount;
+
+        public DoubleLimitedQueueIterator() {
+            this.next = 0;
+            this.last = -1;
+            this.expectedModCount = modCount;
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            checkModCount();
+            removeAt(last);
+            next = last;
+            last = -1;
+            expectedModCount = modCount;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public Double next() {
+            checkModCount();
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            return values[slot(next++)];
+        }
+
+        private void checkModCount() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+}
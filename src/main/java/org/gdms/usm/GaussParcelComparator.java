@@ -52,18 +52,29 @@ public final class GaussParcelComparator implements Comparator<Parcel>, Serializ
         this.manager = m;
     }
     
+    /**
+     * Compares the exact scores of two parcels. Scores closer than 1e-6 used to be equal,
+     * but comparing them with a tolerance is not transitive : the sorted list depended on
+     * the sort algorithm, and could differ from the parcel selected by rank. Such parcels
+     * are now ordered, and equals only holds for the same score.
+     */
     @Override
     public int compare(Parcel p1, Parcel p2) {
-        double parcelComparison = getParcelScore(p1) - getParcelScore(p2);
-        if (Math.abs(parcelComparison) < 0.000001) {
-            return 0;
-        }
-        else if (parcelComparison > 0) {
-            return 1;
-        }
-        else {
-            return -1;
+        return Double.compare(getParcelScore(p1), getParcelScore(p2));
+    }
+    
+    /**
+     * Gets the score of a parcel according to its attraction and the household wishes.
+     * Uses the manager score cache for the parcels of the simulation.
+     * @param p the parcel to be evaluated
+     * @return the specified parcel score
+     */
+    public double getParcelScore(Parcel p) {
+        ParcelScoreCache cache = manager.getScoreCache();
+        if (cache.contains(p)) {
+            return cache.getScore(concernedHousehold, p);
         }
+        return computeParcelScore(p);
     }
     
     /**
@@ -71,7 +82,7 @@ public final class GaussParcelComparator implements Comparator<Parcel>, Serializ
      * @param p the parcel to be evaluated
      * @return the specified parcel score
      */
-    public double getParcelScore(Parcel p) {
+    public double computeParcelScore(Parcel p) {
         double amenitiesPart = 0;
         double constructibilityPart = manager.getConstructibilityWeighting()*((double) p.getConstructibilityIndex());
         double idealHousingPart = manager.getIdealhousingWeighting()*(100.0 - (double) concernedHousehold.getIdealHousingCoefficient(p));
@@ -44,21 +44,59 @@ import org.gdms.driver.DriverException;
  */
 public final class GaussParcelSelector extends MovingInParcelSelector {
     
+    private boolean rankFirst;
+    private final double[] buildTypeAreas;
+    private int[] candidateIndexes;
+    
     public GaussParcelSelector() {
-        //TGV
+        rankFirst = true;
+        buildTypeAreas = new double[NearbyBuildTypeCalculator.BUILD_TYPE_SLOTS];
+        candidateIndexes = new int[0];
     }
     
     @Override
     public Parcel selectedParcel(Household h) throws NoSuchTableException, DataSourceCreationException, DriverException {
+        if (rankFirst) {
+            return selectedParcelByRank(h);
+        }
         List<Parcel> sortedList = getSortedList(h);
-        Random generator = new Random();
+        Random generator = getManager().getRandom(RandomStreams.MOVING_IN);
         if (sortedList.isEmpty()) {
             for (StepListener sl : getManager().getStep().getListeners()) {
                 sl.householdDisappeared(h);
-                return null;
             }
+            return null;
+        }
+        return sortedList.get(Math.max(0, - (int) (Math.abs(generator.nextGaussian())*getManager().getGaussDeviation()*sortedList.size()) + sortedList.size() - 1));
+    }
+    
+    /**
+     * Draws the gaussian rank first, then selects the parcel of this rank among the
+     * candidates without sorting them. Gives the same parcel as the sorted list would.
+     * @param h the household who wants to move in
+     * @return the selected parcel, or null if there is no candidate
+     * @throws NoSuchTableException
+     * @throws DataSourceCreationException
+     * @throws DriverException 
+     */
+    public Parcel selectedParcelByRank(Household h) throws NoSuchTableException, DataSourceCreationException, DriverException {
+        List<Parcel> candidates = getCandidateList(h);
+        int size = candidates.size();
+        if (size == 0) {
+            for (StepListener sl : getManager().getStep().getListeners()) {
+                sl.householdDisappeared(h);
+            }
+            return null;
+        }
+        Random generator = getManager().getRandom(RandomStreams.MOVING_IN);
+        int rank = Math.max(0, - (int) (Math.abs(generator.nextGaussian())*getManager().getGaussDeviation()*size) + size - 1);
+        
+        double[] classScores = getManager().getScoreCache().getScores(h);
+        double[] scores = new double[size];
+        for (int i = 0; i < size; i++) {
+            scores[i] = classScores[candidates.get(i).getIndex()];
         }
-        return sortedList.get(- (int) (Math.abs(generator.nextGaussian())*getManager().getGaussDeviation()*sortedList.size()) + sortedList.size() - 1);
+        return candidates.get(QuickSelect.select(scores, size, rank));
     }
     
     /**
@@ -71,14 +109,58 @@ public final class GaussParcelSelector extends MovingInParcelSelector {
      * @throws DriverException 
      */
     public List<Parcel> getSortedList(Household h) throws NoSuchTableException, DataSourceCreationException, DriverException {
-        List<Parcel> sortedList = new ArrayList<Parcel>();
-        for (Parcel p : this.getManager().getParcelList()) {
-            if ((p.getBuildType() != 7) && !p.isFull() && (h.getWealth() > 0.66*p.getAverageWealth()) && !(p.getBuildType() == 1 && p.getUpgradePotential() < 0.1)) {
-                sortedList.add(p);
-            }
-        }
+        List<Parcel> sortedList = getCandidateList(h);
         GaussParcelComparator gpc = new GaussParcelComparator(h, getManager());
         Collections.sort(sortedList, gpc);
         return sortedList;
     }
+    
+    /**
+     * Filters the global parcel list according to physical considerations (parcel full or not)
+     * and household expectations, keeping the parcel list order.
+     * @param h the household who wants to move in
+     * @return the candidate parcels
+     * @throws NoSuchTableException
+     * @throws DataSourceCreationException
+     * @throws DriverException 
+     */
+    public List<Parcel> getCandidateList(Household h) throws NoSuchTableException, DataSourceCreationException, DriverException {
+        List<Parcel> candidates = new ArrayList<Parcel>();
+        List<Parcel> parcels = this.getManager().getParcelList();
+        ParcelTable table = this.getManager().getParcelTable();
+        if (table.size() == parcels.size()) {
+            if (candidateIndexes.length < parcels.size()) {
+                candidateIndexes = new int[parcels.size()];
+            }
+            int count = table.filter(candidateIndexes, h.getWealth());
+            for (int k = 0; k < count; k++) {
+                Parcel p = parcels.get(candidateIndexes[k]);
+                if (!(table.getBuildType(candidateIndexes[k]) == 1 && p.getUpgradePotential(buildTypeAreas) < 0.1)) {
+                    candidates.add(p);
+                }
+            }
+            return candidates;
+        }
+        for (Parcel p : parcels) {
+            if ((p.getBuildType() != 7) && !p.isFull() && (h.getWealth() > 0.66*p.getAverageWealth()) && !(p.getBuildType() == 1 && p.getUpgradePotential(buildTypeAreas) < 0.1)) {
+                candidates.add(p);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * @return true if the rank is drawn before selecting the parcel, false if the whole list is sorted
+     */
+    public boolean isRankFirst() {
+        return rankFirst;
+    }
+
+    /**
+     * @param rankFirst true to draw the rank first and select the parcel in linear time,
+     * false to sort the whole candidate list
+     */
+    public void setRankFirst(boolean rankFirst) {
+        this.rankFirst = rankFirst;
+    }
 }
@@ -36,14 +36,23 @@ package org.gdms.usm;
 
 /**
  * Household representation as an object.
+ * The household is a view over a slot of a household table : its id, age, maximum
+ * wealth and housing parcel are read from and written to the table columns. Outside
+ * the table of a manager, it lives alone in a one-slot table.
  * @author Thomas Salliou
  */
 public final class Household {
 
-    private final int id;
-    private int age;
-    private final int maxWealth;
-    private Parcel housingPlot;
+    /**
+     * Number of household classes : every combination of age band and wealth band.
+     */
+    public static final int CLASS_COUNT = 25;
+
+    private HouseholdTable table;
+    private int tableSlot;
+    private CohortAgingEngine agingEngine;
+    private int cohortSlot = -1;
+    private int residentSlot = -1;
 
     /**
      * Builds a new Household with given age and maximum wealth.
@@ -51,9 +60,7 @@ public final class Household {
      * @param mW 
      */
     public Household(int id, int a, int mW) {
-        this.id = id;
-        this.age = a;
-        this.maxWealth = mW;
+        this(new HouseholdTable(), id, a, mW, null);
     }
 
     /**
@@ -63,38 +70,143 @@ public final class Household {
      * @param hP 
      */
     public Household(int id, int a, int mW, Parcel hP) {
-        this.id = id;
-        this.age = a;
-        this.maxWealth = mW;
-        this.housingPlot = hP;
+        this(new HouseholdTable(), id, a, mW, hP);
+    }
+
+    /**
+     * Builds a new Household in a slot of the given table.
+     * @param t the table
+     */
+    Household(HouseholdTable t, int id, int a, int mW, Parcel hP) {
+        this.table = t;
+        this.tableSlot = t.create(this, id, a, mW, hP);
     }
 
     /**
-     * @return the age
+     * @return the age, following the aging engine year if the household is attached to one
      */
     public int getAge() {
-        return age;
+        return table.getAge(tableSlot, agingEngine == null ? 0 : agingEngine.getYear());
+    }
+
+    /**
+     * @return the aging engine of the household, or null if it ages with grow
+     */
+    CohortAgingEngine getAgingEngine() {
+        return agingEngine;
+    }
+
+    /**
+     * @return the birth year in the aging engine years, meaningful only when attached
+     */
+    int getBirthYear() {
+        return table.getBirthYear(tableSlot);
+    }
+
+    /**
+     * @return the household table the household is a view over
+     */
+    HouseholdTable getTable() {
+        return table;
+    }
+
+    /**
+     * @return the slot of the household in its table
+     */
+    int getTableSlot() {
+        return tableSlot;
+    }
+
+    /**
+     * Moves the view to another slot, the table having copied the attributes into it.
+     * @param t the table
+     * @param slot the slot
+     */
+    void setTable(HouseholdTable t, int slot) {
+        this.table = t;
+        this.tableSlot = slot;
+    }
+
+    /**
+     * @return the position of the household in the resident list of its parcel
+     */
+    int getResidentSlot() {
+        return residentSlot;
+    }
+
+    /**
+     * @param residentSlot the position of the household in the resident list of its parcel
+     */
+    void setResidentSlot(int residentSlot) {
+        this.residentSlot = residentSlot;
+    }
+
+    /**
+     * @return the position of the household in its cohort of the aging engine
+     */
+    int getCohortSlot() {
+        return cohortSlot;
+    }
+
+    /**
+     * @param cohortSlot the position of the household in its cohort of the aging engine
+     */
+    void setCohortSlot(int cohortSlot) {
+        this.cohortSlot = cohortSlot;
+    }
+
+    /**
+     * Lets the aging engine give the age, starting from the current one.
+     * @param engine the aging engine
+     */
+    void attach(CohortAgingEngine engine) {
+        table.setBirthYear(tableSlot, engine.getYear() - getAge());
+        this.agingEngine = engine;
+    }
+
+    /**
+     * Freezes the current age, which then only changes with grow.
+     */
+    void detach() {
+        table.setAge(tableSlot, getAge());
+        this.agingEngine = null;
     }
 
     /**
      * @return the maxWealth
      */
     public int getMaxWealth() {
-        return maxWealth;
+        return table.getMaxWealth(tableSlot);
     }
 
     /**
      * @return the housingPlot
      */
     public Parcel getHousingPlot() {
-        return housingPlot;
+        return table.getHousingPlot(tableSlot);
     }
 
     /**
-     * Increments the household age.
+     * @param p the housing parcel, or null
+     */
+    private void setHousingPlot(Parcel p) {
+        table.setHousingPlot(tableSlot, p);
+    }
+
+    /**
+     * Increments the household age, and tells the housing parcel if the wealth changed.
+     * Households attached to an aging engine grow with it : this has no effect on them.
      */
     public void grow() {
-        this.age++;
+        if (agingEngine != null) {
+            return;
+        }
+        int oldWealth = getWealth();
+        table.setAge(tableSlot, getAge() + 1);
+        Parcel p = getHousingPlot();
+        if (p != null && oldWealth != getWealth()) {
+            p.wealthChanged(this, oldWealth);
+        }
     }
 
     /**
@@ -102,6 +214,25 @@ public final class Household {
      * @return the household's wealth
      */
     public int getWealth() {
+        return getWealth(this.getAge());
+    }
+
+    /**
+     * Gets the household's wealth at a given age.
+     * @param theAge the age
+     * @return the household's wealth at this age
+     */
+    int getWealth(int theAge) {
+        return wealth(theAge, getMaxWealth());
+    }
+
+    /**
+     * Gets the wealth of a household from its columns.
+     * @param age the age
+     * @param maxWealth the maximum wealth
+     * @return the wealth at this age
+     */
+    static int wealth(int age, int maxWealth) {
         if (age < 60) {
             return maxWealth * age / 60;
         } else {
@@ -109,118 +240,117 @@ public final class Household {
         }
     }
 
+    /**
+     * Gets the age band used by the ideal housing coefficient : under 25, 35, 50, 65, and older.
+     * The amenities age bracket (under 35, 65, and older) is a coarser version of it.
+     * @return the age band, between 0 and 4
+     */
+    public int getAgeBand() {
+        return ageBand(getAge());
+    }
+
+    /**
+     * @param age an age
+     * @return the age band of this age
+     */
+    static int ageBand(int age) {
+        if (age < 25) {
+            return 0;
+        } else if (age < 35) {
+            return 1;
+        } else if (age < 50) {
+            return 2;
+        } else if (age < 65) {
+            return 3;
+        } else {
+            return 4;
+        }
+    }
+
+    /**
+     * Gets the wealth band used by the ideal housing coefficient : under 18000, 25200,
+     * 35400, 45000, and richer.
+     * @return the wealth band, between 0 and 4
+     */
+    public int getWealthBand() {
+        return wealthBand(getWealth());
+    }
+
+    /**
+     * @param wealth a wealth
+     * @return the wealth band of this wealth
+     */
+    static int wealthBand(int wealth) {
+        if (wealth < 18000) {
+            return 0;
+        } else if (wealth < 25200) {
+            return 1;
+        } else if (wealth < 35400) {
+            return 2;
+        } else if (wealth < 45000) {
+            return 3;
+        } else {
+            return 4;
+        }
+    }
+
+    /**
+     * Gets the household class. Two households of the same class give the same score to every parcel.
+     * @return the household class, between 0 and CLASS_COUNT - 1
+     */
+    public int getHouseholdClass() {
+        return householdClass(getAge(), getMaxWealth());
+    }
+
+    /**
+     * Gets the class of a household from its columns.
+     * @param age the age
+     * @param maxWealth the maximum wealth
+     * @return the household class, between 0 and CLASS_COUNT - 1
+     */
+    static int householdClass(int age, int maxWealth) {
+        return ageBand(age) * 5 + wealthBand(wealth(age, maxWealth));
+    }
+
     /**
      * Gets the ideal housing coefficient.
      * @return the ideal housing coefficient
      */
     public int getIdealHousingCoefficient(Parcel p) {
+        return getIdealHousingCoefficient(p.getBuildType());
+    }
 
-        int ihcByWealth = 66;
-        int ihcByAge = 66;
-        final int wealth = this.getWealth();
-        final int theAge = this.getAge();
-
-        switch (p.getBuildType()) {
-            //Build type 1 and 2 case : become or is "houses with big gardens".
-            case 1:
-            case 2:
-                if (wealth < 18000) {
-                    ihcByWealth = 62;
-                } else if (wealth < 25200) {
-                    ihcByWealth = 67;
-                } else if (wealth < 35400) {
-                    ihcByWealth = 56;
-                } else if (wealth < 45000) {
-                    ihcByWealth = 57;
-                } else {
-                    ihcByWealth = 52;
-                }
-
-                if (theAge < 25) {
-                    ihcByAge = 43;
-                } else if (theAge < 35) {
-                    ihcByAge = 58;
-                } else if (theAge < 50) {
-                    ihcByAge = 53;
-                } else if (theAge < 65) {
-                    ihcByAge = 63;
-                } else {
-                    ihcByAge = 81;
-                }
-                break;
-            //Build type 3 case : houses with little gardens.
-            case 3:
-                if (wealth < 18000) {
-                    ihcByWealth = 62;
-                } else if (wealth < 25200) {
-                    ihcByWealth = 61;
-                } else if (wealth < 35400) {
-                    ihcByWealth = 55;
-                } else if (wealth < 45000) {
-                    ihcByWealth = 49;
-                } else {
-                    ihcByWealth = 69;
-                }
-
-                if (theAge < 25) {
-                    ihcByAge = 81;
-                } else if (theAge < 35) {
-                    ihcByAge = 54;
-                } else if (theAge < 50) {
-                    ihcByAge = 53;
-                } else if (theAge < 65) {
-                    ihcByAge = 59;
-                } else {
-                    ihcByAge = 61;
-                }
-                break;
-            //Build types 4 and 5 : flats.
-            case 4:
-            case 5:
-                if (wealth < 18000) {
-                    ihcByWealth = 77;
-                } else if (wealth < 25200) {
-                    ihcByWealth = 72;
-                } else if (wealth < 35400) {
-                    ihcByWealth = 89;
-                } else if (wealth < 45000) {
-                    ihcByWealth = 94;
-                } else {
-                    ihcByWealth = 79;
-                }
-
-                if (theAge < 25) {
-                    ihcByAge = 76;
-                } else if (theAge < 35) {
-                    ihcByAge = 88;
-                } else if (theAge < 50) {
-                    ihcByAge = 94;
-                } else if (theAge < 65) {
-                    ihcByAge = 79;
-                } else {
-                    ihcByAge = 58;
-                }
-                break;
-            case 7:
-                throw new IllegalArgumentException("Can't determine an IHC for a business park.");
-            default:
-                throw new IllegalArgumentException("Build type is not valid.");
-        }
-        return (ihcByAge + ihcByWealth) / 2;
+    /**
+     * Gets the ideal housing coefficient for a parcel of the given build type.
+     * @param buildType the parcel build type
+     * @return the ideal housing coefficient
+     */
+    public int getIdealHousingCoefficient(int buildType) {
+        return IdealHousingTable.get(buildType, getHouseholdClass());
     }
     
     /**
      * @return the result of getIdealHousingCoefficient called for the housingPlot 
      */
     public int getMovingIHC() {
-        return getIdealHousingCoefficient(housingPlot);
+        return getIdealHousingCoefficient(getHousingPlot());
+    }
+
+    /**
+     * The hash code is the id, so that sets of households are iterated in the same
+     * order from one run to another.
+     * @return the id
+     */
+    @Override
+    public int hashCode() {
+        return getId();
     }
 
     /**
      * @return the id 
      */
     public int getId() {
-        return id;
+        return table.getId(tableSlot);
     }
 
     /**
@@ -230,7 +360,7 @@ public final class Household {
     public void moveIn(Parcel p) {
         if (p != null) {
           p.addHousehold(this);
-          housingPlot = p;
+          setHousingPlot(p);
         }
     }
 
@@ -238,7 +368,7 @@ public final class Household {
      * Resets the housing parcel to null, and removes the household of this parcel household list.
      */
     public void moveOut() {
-        housingPlot.removeHousehold(this);
-        housingPlot = null;
+        getHousingPlot().removeHousehold(this);
+        setHousingPlot(null);
     }
 }
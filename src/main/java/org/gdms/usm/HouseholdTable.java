@@ -0,0 +1,334 @@
+/**
+ *
+ * Gdms-USM is a library dedicated to multi-agent simulation for modeling urban sprawl.
+ * It is based on the GDMS library. It uses the OrbisGIS renderer to display results.
+ *
+ * This version is developed at French IRSTV Institute and at LIENSs UMR 7266 laboratory
+ * (http://lienss.univ-larochelle.fr/) as part of the VegDUD project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-09-VILL-0007.
+ *
+ * Gdms-USM is distributed under GPL 3 license. It is maintained by the "Atelier SIG" team of
+ * the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Gdms-USM is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Gdms-USM is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Gdms-USM. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://trac.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.usm;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Columnar storage of the households : one array per attribute, indexed by slot, and a
+ * bitset of the live slots. A household is a view over its slot : its id, age, maximum
+ * wealth and housing parcel only live in the columns, the parcel as its index in the
+ * parcel list of the table.
+ * The table of a manager holds its whole population, which can then be scanned
+ * sequentially without visiting the parcels. A household outside any manager table
+ * lives alone in a one-slot table, which costs far more memory per household.
+ * Slots of removed households are reused, and the arrays grow by chunks.
+ * @author Thomas Salliou
+ */
+public final class HouseholdTable {
+
+    private static final int CHUNK = 4096;
+    private final List<Parcel> parcels;
+    //the parcel of a household alone in its table, which has no parcel list
+    private Parcel aloneParcel;
+    private Household[] households;
+    private int[] ids;
+    private int[] ages;
+    private int[] birthYears;
+    private int[] maxWealths;
+    private int[] parcelIndexes;
+    private final BitSet live;
+    private final BitSet aging;
+    private int firstFree;
+    private int size;
+
+    /**
+     * Builds an empty HouseholdTable.
+     * @param parcels the parcels the households live in, indexed as by Parcel.getIndex
+     */
+    public HouseholdTable(List<Parcel> parcels) {
+        this(parcels, CHUNK);
+    }
+
+    /**
+     * Builds the table of a household alone.
+     */
+    HouseholdTable() {
+        this(null, 1);
+    }
+
+    private HouseholdTable(List<Parcel> parcels, int capacity) {
+        this.parcels = parcels;
+        this.households = new Household[capacity];
+        this.ids = new int[capacity];
+        this.ages = new int[capacity];
+        this.birthYears = new int[capacity];
+        this.maxWealths = new int[capacity];
+        this.parcelIndexes = new int[capacity];
+        this.live = new BitSet(capacity);
+        this.aging = new BitSet(capacity);
+        this.firstFree = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Gives a slot to a new household.
+     * @param h the household, which must keep the slot
+     * @param id the household id
+     * @param age the age
+     * @param maxWealth the maximum wealth
+     * @param housingPlot the housing parcel, or null
+     * @return the slot
+     */
+    int create(Household h, int id, int age, int maxWealth, Parcel housingPlot) {
+        int slot = takeSlot(h);
+        ids[slot] = id;
+        aging.clear(slot);
+        ages[slot] = age;
+        maxWealths[slot] = maxWealth;
+        setHousingPlot(slot, housingPlot);
+        return slot;
+    }
+
+    /**
+     * Moves a household into a free slot of this table. Does nothing if it is already in it.
+     * @param h the household, which must be alone in its table
+     */
+    public void add(Household h) {
+        HouseholdTable previous = h.getTable();
+        if (previous == this) {
+            return;
+        }
+        if (previous.parcels != null) {
+            throw new IllegalArgumentException("Household " + h.getId() + " is already in a table.");
+        }
+        indexOf(previous.getHousingPlot(h.getTableSlot()));
+        int slot = takeSlot(h);
+        copy(previous, h.getTableSlot(), slot);
+        previous.free(h.getTableSlot());
+        h.setTable(this, slot);
+    }
+
+    /**
+     * Frees the slot of a household, which moves alone in a table of its own, keeping its attributes.
+     * @param h the household
+     */
+    public void remove(Household h) {
+        if (h.getTable() != this) {
+            return;
+        }
+        HouseholdTable alone = new HouseholdTable();
+        int slot = alone.takeSlot(h);
+        alone.copy(this, h.getTableSlot(), slot);
+        free(h.getTableSlot());
+        h.setTable(alone, slot);
+    }
+
+    private int takeSlot(Household h) {
+        int slot = live.nextClearBit(firstFree);
+        if (slot >= ids.length) {
+            grow();
+        }
+        live.set(slot);
+        households[slot] = h;
+        firstFree = slot + 1;
+        size++;
+        return slot;
+    }
+
+    private void free(int slot) {
+        live.clear(slot);
+        aging.clear(slot);
+        households[slot] = null;
+        aloneParcel = null;
+        firstFree = Math.min(firstFree, slot);
+        size--;
+    }
+
+    private void copy(HouseholdTable from, int fromSlot, int slot) {
+        ids[slot] = from.ids[fromSlot];
+        aging.set(slot, from.aging.get(fromSlot));
+        ages[slot] = from.ages[fromSlot];
+        birthYears[slot] = from.birthYears[fromSlot];
+        maxWealths[slot] = from.maxWealths[fromSlot];
+        setHousingPlot(slot, from.getHousingPlot(fromSlot));
+    }
+
+    /**
+     * Sets the age of a household which does not age with an aging engine.
+     * @param slot a live slot
+     * @param age the age
+     */
+    void setAge(int slot, int age) {
+        aging.clear(slot);
+        ages[slot] = age;
+    }
+
+    /**
+     * Sets the birth year of a household which ages with an aging engine.
+     * @param slot a live slot
+     * @param birthYear the birth year in the aging engine years
+     */
+    void setBirthYear(int slot, int birthYear) {
+        aging.set(slot);
+        birthYears[slot] = birthYear;
+    }
+
+    /**
+     * @param slot a live slot
+     * @param housingPlot the housing parcel, or null
+     */
+    void setHousingPlot(int slot, Parcel housingPlot) {
+        parcelIndexes[slot] = indexOf(housingPlot);
+        if (parcels == null) {
+            aloneParcel = housingPlot;
+        }
+    }
+
+    /**
+     * Gives the index a parcel is stored as, 0 in the table of a household alone.
+     * @param p a parcel, or null
+     * @return the index, or -1 for null
+     */
+    private int indexOf(Parcel p) {
+        if (p == null) {
+            return -1;
+        }
+        if (parcels == null) {
+            return 0;
+        }
+        int index = p.getIndex();
+        if (index < 0 || index >= parcels.size() || parcels.get(index) != p) {
+            throw new IllegalArgumentException("Parcel " + p.getId() + " is not in the parcel list of the table.");
+        }
+        return index;
+    }
+
+    /**
+     * @return the number of households in the table
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of slots, live or not
+     */
+    public int getCapacity() {
+        return ids.length;
+    }
+
+    /**
+     * Gives the first live slot from a position, to scan the table in slot order.
+     * @param from the first slot to check
+     * @return the first live slot, or -1 if there is none
+     */
+    public int nextLive(int from) {
+        return live.nextSetBit(from);
+    }
+
+    /**
+     * @param slot a live slot
+     * @return the household viewing the slot
+     */
+    public Household getHousehold(int slot) {
+        return households[slot];
+    }
+
+    /**
+     * @param slot a live slot
+     * @return the household id
+     */
+    public int getId(int slot) {
+        return ids[slot];
+    }
+
+    /**
+     * @param slot a live slot
+     * @param year the current year of the aging engine
+     * @return the household age
+     */
+    public int getAge(int slot, int year) {
+        return aging.get(slot) ? year - birthYears[slot] : ages[slot];
+    }
+
+    /**
+     * @param slot a live slot
+     * @return the birth year in the aging engine years, meaningful only for an aging household
+     */
+    int getBirthYear(int slot) {
+        return birthYears[slot];
+    }
+
+    /**
+     * @param slot a live slot
+     * @return the household maximum wealth
+     */
+    public int getMaxWealth(int slot) {
+        return maxWealths[slot];
+    }
+
+    /**
+     * @param slot a live slot
+     * @return the housing parcel, or null if the household is homeless
+     */
+    public Parcel getHousingPlot(int slot) {
+        int index = parcelIndexes[slot];
+        if (index < 0) {
+            return null;
+        }
+        return parcels == null ? aloneParcel : parcels.get(index);
+    }
+
+    /**
+     * @param slot a live slot
+     * @return the index of the housing parcel in the parcel list, or -1 if the household is homeless
+     */
+    public int getParcelIndex(int slot) {
+        return parcelIndexes[slot];
+    }
+
+    /**
+     * Counts the housed households by a sequential scan of the parcel index column.
+     * @return the number of households living in a parcel
+     */
+    public int countHoused() {
+        int count = 0;
+        for (int slot = live.nextSetBit(0); slot >= 0; slot = live.nextSetBit(slot + 1)) {
+            if (parcelIndexes[slot] >= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void grow() {
+        int capacity = ids.length + CHUNK;
+        households = Arrays.copyOf(households, capacity);
+        ids = Arrays.copyOf(ids, capacity);
+        ages = Arrays.copyOf(ages, capacity);
+        birthYears = Arrays.copyOf(birthYears, capacity);
+        maxWealths = Arrays.copyOf(maxWealths, capacity);
+        parcelIndexes = Arrays.copyOf(parcelIndexes, capacity);
+    }
+}
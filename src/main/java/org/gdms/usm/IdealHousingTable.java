@@ -0,0 +1,93 @@
+/**
+ *
+ * Gdms-USM is a library dedicated to multi-agent simulation for modeling urban sprawl.
+ * It is based on the GDMS library. It uses the OrbisGIS renderer to display results.
+ *
+ * This version is developed at French IRSTV Institute and at LIENSs UMR 7266 laboratory
+ * (http://lienss.univ-larochelle.fr/) as part of the VegDUD project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-09-VILL-0007.
+ *
+ * Gdms-USM is distributed under GPL 3 license. It is maintained by the "Atelier SIG" team of
+ * the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Gdms-USM is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Gdms-USM is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Gdms-USM. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://trac.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.usm;
+
+/**
+ * Ideal housing coefficients, precomputed for every build type and household class.
+ * The coefficient is the mean of a wealth band coefficient and an age band coefficient,
+ * both depending on the build type : houses with big gardens (1 and 2), houses with
+ * little gardens (3) and flats (4 and 5).
+ * @author Thomas Salliou
+ */
+public final class IdealHousingTable {
+
+    private static final int[] BIG_GARDEN_BY_WEALTH = {62, 67, 56, 57, 52};
+    private static final int[] BIG_GARDEN_BY_AGE = {43, 58, 53, 63, 81};
+    private static final int[] LITTLE_GARDEN_BY_WEALTH = {62, 61, 55, 49, 69};
+    private static final int[] LITTLE_GARDEN_BY_AGE = {81, 54, 53, 59, 61};
+    private static final int[] FLAT_BY_WEALTH = {77, 72, 89, 94, 79};
+    private static final int[] FLAT_BY_AGE = {76, 88, 94, 79, 58};
+
+    private static final int[][] BY_WEALTH = {null, BIG_GARDEN_BY_WEALTH, BIG_GARDEN_BY_WEALTH, LITTLE_GARDEN_BY_WEALTH, FLAT_BY_WEALTH, FLAT_BY_WEALTH, null, null};
+    private static final int[][] BY_AGE = {null, BIG_GARDEN_BY_AGE, BIG_GARDEN_BY_AGE, LITTLE_GARDEN_BY_AGE, FLAT_BY_AGE, FLAT_BY_AGE, null, null};
+
+    /**
+     * Coefficients indexed by buildType * CLASS_COUNT + householdClass, -1 for invalid build types.
+     */
+    private static final int[] TABLE = buildTable();
+
+    private IdealHousingTable() {
+    }
+
+    private static int[] buildTable() {
+        int[] table = new int[BY_WEALTH.length * Household.CLASS_COUNT];
+        for (int buildType = 0; buildType < BY_WEALTH.length; buildType++) {
+            for (int ageBand = 0; ageBand < 5; ageBand++) {
+                for (int wealthBand = 0; wealthBand < 5; wealthBand++) {
+                    int i = buildType * Household.CLASS_COUNT + ageBand * 5 + wealthBand;
+                    if (BY_WEALTH[buildType] == null) {
+                        table[i] = -1;
+                    } else {
+                        table[i] = (BY_AGE[buildType][ageBand] + BY_WEALTH[buildType][wealthBand]) / 2;
+                    }
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Gets the ideal housing coefficient of a household class for a build type.
+     * @param buildType the parcel build type
+     * @param householdClass the household class, as given by Household.getHouseholdClass
+     * @return the ideal housing coefficient
+     * @throws IllegalArgumentException for a business park or an invalid build type
+     */
+    public static int get(int buildType, int householdClass) {
+        if (buildType == 7) {
+            throw new IllegalArgumentException("Can't determine an IHC for a business park.");
+        }
+        if (buildType < 0 || buildType >= BY_WEALTH.length || TABLE[buildType * Household.CLASS_COUNT] < 0) {
+            throw new IllegalArgumentException("Build type is not valid.");
+        }
+        return TABLE[buildType * Household.CLASS_COUNT + householdClass];
+    }
+}
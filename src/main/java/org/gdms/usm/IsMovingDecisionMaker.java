@@ -44,7 +44,36 @@ public abstract class IsMovingDecisionMaker {
      * @return true if the household is moving out
      */
     public abstract boolean isMoving(Household h);
+
+    /**
+     * Checks if the household of a table slot wants to move, for a manager scanning its
+     * household table. Calls isMoving with the household by default.
+     * @param t the household table
+     * @param slot the slot of a housed household
+     * @return true if the household is moving out
+     */
+    public boolean isMoving(HouseholdTable t, int slot) {
+        return isMoving(t.getHousehold(slot));
+    }
+
+    /**
+     * Tells whether the decision of a household only depends on itself and on the
+     * state at the beginning of the moving phase, and not on the moves already
+     * decided. Only then can decisions be taken in parallel, so decision makers
+     * have to declare it explicitly.
+     * @return false by default
+     */
+    public boolean hasIndependentDecisions() {
+        return false;
+    }
     
+    /**
+     * Called by the manager once the globals are read, so that the settings they hold
+     * can be taken into account. Does nothing by default.
+     */
+    public void globalsInitialized() {
+    }
+
     /**
      * @return the myManager
      */
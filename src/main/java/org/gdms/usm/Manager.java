@@ -36,11 +36,15 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.gdms.data.DataSource;
@@ -106,6 +110,25 @@ public final class Manager {
     private boolean modifyThresholds;
     private ManagerAdvisor advisor = null;
     
+    //output tables
+    private AppendOnlyTable householdTable;
+    private AppendOnlyTable householdStateTable;
+    private AppendOnlyTable plotStateTable;
+    private AppendOnlyTable stepTable;
+    private int checkpointInterval;
+    private int writeQueueDepth;
+    private int movingParallelism;
+    private RandomStreams randomStreams;
+    private CohortAgingEngine agingEngine;
+    private HouseholdTable householdColumns;
+    private ParcelTable parcelTable;
+    private AsyncStateWriter stateWriter;
+    private ParcelScoreCache scoreCache;
+    private boolean batchedMoveIn;
+    private int moveInParallelism;
+    private int moveInConflicts;
+    private File neighbourCacheDirectory;
+    
     /**
      * Builds a new Manager.
      * @param dP the initialization data source
@@ -132,12 +155,160 @@ public final class Manager {
         moversCount = 0;
         modifyThresholds = false;
         advisor = null;
+        checkpointInterval = 0;
+        writeQueueDepth = 2;
+        movingParallelism = 1;
+        moveInParallelism = 1;
+        randomStreams = new RandomStreams(System.nanoTime());
+        agingEngine = new CohortAgingEngine();
+        householdColumns = new HouseholdTable(parcelList);
+        parcelTable = new ParcelTable();
+        stateWriter = null;
+        scoreCache = new ParcelScoreCache(this);
+        neighbourCacheDirectory = null;
     }
 
     public void setModifyThresholds(boolean modifyThresholds) {
         this.modifyThresholds = modifyThresholds;
     }
 
+    /**
+     * Sets the number of steps between two finalizations of the output tables, each one
+     * adding a segment to every table. With 0 (the default), the tables are only finalized
+     * at the end of the simulation.
+     * @param checkpointInterval the number of steps between two checkpoints
+     */
+    public void setCheckpointInterval(int checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Sets the number of step snapshots which can wait for the background writer before
+     * saveState blocks. With 0, saveState writes synchronously.
+     * @param writeQueueDepth the queue depth of the background writer
+     */
+    public void setWriteQueueDepth(int writeQueueDepth) {
+        this.writeQueueDepth = writeQueueDepth;
+    }
+
+    /**
+     * Sets the number of threads taking the moving decisions. Decisions are only taken
+     * in parallel if the decision maker has independent decisions, and the result is
+     * the same as with 1 (the default).
+     * @param movingParallelism the number of threads of the moving phase
+     */
+    public void setMovingParallelism(int movingParallelism) {
+        if (movingParallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1.");
+        }
+        this.movingParallelism = movingParallelism;
+    }
+
+    /**
+     * Sets whether the homeless households move in by household class, see BatchedMoveIn.
+     * Only used with a GaussParcelSelector ; the households left homeless after the batched
+     * rounds move in one by one.
+     * @param batchedMoveIn true to move in by household class, false (the default) to move in one by one
+     */
+    public void setBatchedMoveIn(boolean batchedMoveIn) {
+        this.batchedMoveIn = batchedMoveIn;
+    }
+
+    /**
+     * @return true if the homeless households move in by household class
+     */
+    public boolean isBatchedMoveIn() {
+        return batchedMoveIn;
+    }
+
+    /**
+     * Sets the number of threads selecting the parcels of the homeless, see ParallelMoveIn.
+     * Only used with a GaussParcelSelector, and not with the batched move in. Above 1, runs
+     * stay reproducible for a given seed and parallelism, but do not draw as with 1, the default.
+     * @param moveInParallelism the number of threads of the move in phase
+     */
+    public void setMoveInParallelism(int moveInParallelism) {
+        if (moveInParallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1.");
+        }
+        this.moveInParallelism = moveInParallelism;
+    }
+
+    /**
+     * @return the number of threads of the move in phase
+     */
+    public int getMoveInParallelism() {
+        return moveInParallelism;
+    }
+
+    /**
+     * @return the number of conflicting claims on a parcel during the last parallel move in
+     */
+    public int getMoveInConflicts() {
+        return moveInConflicts;
+    }
+
+    /**
+     * Sets the folder of the neighbour graph cache.
+     * With null (the default), the cache is kept next to the input data file.
+     * @param neighbourCacheDirectory the folder of the cache, or null
+     */
+    public void setNeighbourCacheDirectory(File neighbourCacheDirectory) {
+        this.neighbourCacheDirectory = neighbourCacheDirectory;
+    }
+
+    /**
+     * @return the folder of the neighbour graph cache, or null if it is kept next to the input data file
+     */
+    public File getNeighbourCacheDirectory() {
+        return neighbourCacheDirectory;
+    }
+
+    /**
+     * Sets the seed of every random draw of the simulation, making runs reproducible.
+     * @param seed the seed
+     */
+    public void setSeed(long seed) {
+        this.randomStreams = new RandomStreams(seed);
+    }
+
+    /**
+     * @return the random streams of the simulation
+     */
+    public RandomStreams getRandomStreams() {
+        return randomStreams;
+    }
+
+    /**
+     * Gets the generator of a phase for the current step.
+     * @param phase the phase, see RandomStreams
+     * @return the generator
+     */
+    public Random getRandom(int phase) {
+        return randomStreams.get(phase, step.getStepNumber());
+    }
+
+    /**
+     * @return the movingParallelism
+     */
+    public int getMovingParallelism() {
+        return movingParallelism;
+    }
+
+    /**
+     * @return the writeQueueDepth
+     */
+    public int getWriteQueueDepth() {
+        return writeQueueDepth;
+    }
+
+    /**
+     * @return the checkpointInterval
+     */
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
     /**
      * @return the plotList
      */
@@ -178,14 +349,12 @@ public final class Manager {
         plotGW.writeMetadata(0, m1);
 
         //Household table creation
-        File file2 = new File(outputPath + "/Household.gdms");
-        GdmsWriter householdGW = new GdmsWriter(file2);
         String[] fieldNames2 = {"householdID", "maximumWealth"};
         Type[] fieldTypes2 = {integ, integ};
-        Metadata m2 = new DefaultMetadata(fieldTypes2, fieldNames2);
-        householdGW.writeMetadata(0, m2);
+        householdTable = new AppendOnlyTable("Household", outputPath, new DefaultMetadata(fieldTypes2, fieldNames2), dsf);
 
         //Plot and Household tables filling
+        householdTable.open();
         for (Parcel p : parcelList) {
             plotGW.addValues(new Value[]{ValueFactory.createValue(p.getId()),
                         ValueFactory.createValue(p.getTheGeom()),
@@ -195,7 +364,7 @@ public final class Manager {
                         ValueFactory.createValue(p.getAmenitiesIndex3()),
                         ValueFactory.createValue(p.getConstructibilityIndex())});
             for (Household h : p.getHouseholdList()) {
-                householdGW.addValues(new Value[]{ValueFactory.createValue(h.getId()), ValueFactory.createValue(h.getMaxWealth())});
+                householdTable.append(new Value[]{ValueFactory.createValue(h.getId()), ValueFactory.createValue(h.getMaxWealth())});
             }
         }
 
@@ -203,204 +372,167 @@ public final class Manager {
         plotGW.writeExtent();
         plotGW.writeWritenRowCount();
         plotGW.close();
-        householdGW.writeRowIndexes();
-        householdGW.writeExtent();
-        householdGW.writeWritenRowCount();
-        householdGW.close();
+        householdTable.checkpoint();
 
         dsf.getSourceManager().register("Plot", file1);
         if (!dsf.getIndexManager().isIndexed("Plot", "the_geom")) {
             NullProgressMonitor npm = new NullProgressMonitor();
             dsf.getIndexManager().buildIndex("Plot", "the_geom", npm);
         }
-        dsf.getSourceManager().register("Household", file2);
 
         //HouseholdState table creation
-        File file3 = new File(outputPath + "/HouseholdState.gdms");
-        GdmsWriter householdStateGW = new GdmsWriter(file3);
         String[] fieldNames3 = {"householdID", "stepNumber", "plotID", "age", "alive"};
         Type[] fieldTypes3 = {integ, integ, integ, integ, bool};
-        Metadata m3 = new DefaultMetadata(fieldTypes3, fieldNames3);
-        householdStateGW.writeMetadata(0, m3);
-        householdStateGW.writeRowIndexes();
-        householdStateGW.writeExtent();
-        householdStateGW.writeWritenRowCount();
-        householdStateGW.close();
-        dsf.getSourceManager().register("HouseholdState", file3);
+        householdStateTable = new AppendOnlyTable("HouseholdState", outputPath, new DefaultMetadata(fieldTypes3, fieldNames3), dsf);
+        householdStateTable.checkpoint();
 
         //PlotState table creation
-        File file4 = new File(outputPath + "/PlotState.gdms");
-        GdmsWriter plotStateGW = new GdmsWriter(file4);
         String[] fieldNames4 = {"plotID", "stepNumber", "buildType", "averageWealth"};
         Type[] fieldTypes4 = {integ, integ, integ, integ};
-        Metadata m4 = new DefaultMetadata(fieldTypes4, fieldNames4);
-        plotStateGW.writeMetadata(0, m4);
-        plotStateGW.writeRowIndexes();
-        plotStateGW.writeExtent();
-        plotStateGW.writeWritenRowCount();
-        plotStateGW.close();
-        dsf.getSourceManager().register("PlotState", file4);
+        plotStateTable = new AppendOnlyTable("PlotState", outputPath, new DefaultMetadata(fieldTypes4, fieldNames4), dsf);
+        plotStateTable.checkpoint();
 
         //Step table creation
-        File file5 = new File(outputPath + "/Step.gdms");
-        GdmsWriter stepGW = new GdmsWriter(file5);
         String[] fieldNames5 = {"stepNumber", "year", "population"};
         Type[] fieldTypes5 = {integ, integ, integ};
-        Metadata m5 = new DefaultMetadata(fieldTypes5, fieldNames5);
-        stepGW.writeMetadata(0, m5);
-        stepGW.writeRowIndexes();
-        stepGW.writeExtent();
-        stepGW.writeWritenRowCount();
-        stepGW.close();
-        dsf.getSourceManager().register("Step", file5);
+        stepTable = new AppendOnlyTable("Step", outputPath, new DefaultMetadata(fieldTypes5, fieldNames5), dsf);
+        stepTable.checkpoint();
     }
 
     /**
-     * Saves relevant information about plots and households into the output database.
+     * Saves relevant information about plots and households into the output database,
+     * and finalizes every table so that it can be read as soon as this method returns.
+     * Finalizing copies the rows saved since the last call, so a simulation rather calls
+     * appendState at each step.
      */
     public void saveState() throws NoSuchTableException, DataSourceCreationException, DriverException, NonEditableDataSourceException, IOException {
-        Type integ = TypeFactory.createType(64);
-        Type bool = TypeFactory.createType(2);
-        
-        //Household table
-        File file1 = new File(outputPath + "/Household_temp.gdms");
-        GdmsWriter householdGW = new GdmsWriter(file1);
-        String[] fieldNames1 = {"householdID", "maximumWealth"};
-        Type[] fieldTypes1 = {integ, integ};
-        Metadata m1 = new DefaultMetadata(fieldTypes1, fieldNames1);
-        householdGW.writeMetadata(0, m1);
-        
-            //Recreate table and copy old data
-        DataSource householdDS = dsf.getDataSource("Household");
-        householdDS.open();
-        for (int i = 0; i < householdDS.getRowCount(); i++) {
-            householdGW.addValues(householdDS.getRow(i));
+        appendState();
+        checkpointOutputDatabase();
+        mergeTables();
+    }
+
+    /**
+     * Appends relevant information about plots and households to the output database.
+     * The state is copied into a snapshot which is written by a background thread when
+     * writeQueueDepth is positive, or immediately otherwise. Only the rows of the current
+     * step are written : every checkpointInterval steps, they are finalized into a new
+     * segment of each table, and closeOutputDatabase merges the segments at the end of the
+     * simulation, see AppendOnlyTable. Tables are opened and finalized on this thread, the
+     * background thread only appends rows.
+     */
+    public void appendState() throws NoSuchTableException, DataSourceCreationException, DriverException, NonEditableDataSourceException, IOException {
+        boolean checkpoint = checkpointInterval > 0 && step.getStepNumber() % checkpointInterval == 0;
+        householdTable.open();
+        plotStateTable.open();
+        householdStateTable.open();
+        stepTable.open();
+        StateSnapshot s = new StateSnapshot(this);
+        if (writeQueueDepth > 0) {
+            if (stateWriter == null) {
+                stateWriter = new AsyncStateWriter(this, writeQueueDepth);
+            }
+            stateWriter.submit(s);
+        } else {
+            writeSnapshot(s);
         }
-        householdDS.close();
-        
-            //Fill in new data
-        while (!newbornList.empty()) {
-            Household h = newbornList.pop();
-            householdGW.addValues(new Value[]{ValueFactory.createValue(h.getId()), ValueFactory.createValue(h.getMaxWealth())});
+        if (checkpoint) {
+            checkpointOutputDatabase();
         }
-        
-        householdGW.writeRowIndexes();
-        householdGW.writeExtent();
-        householdGW.writeWritenRowCount();
-        householdGW.close();
-        dsf.getSourceManager().delete("Household");
-        File file1b = new File(outputPath + "/Household.gdms");
-        file1.renameTo(file1b);
-        dsf.getSourceManager().register("Household", file1b);
+    }
 
-        //PlotState table
-        File file2 = new File(outputPath + "/PlotState_temp.gdms");
-        GdmsWriter plotStateGW = new GdmsWriter(file2);
-        String[] fieldNames2 = {"plotID", "stepNumber", "buildType", "averageWealth"};
-        Type[] fieldTypes2 = {integ, integ, integ, integ};
-        Metadata m2 = new DefaultMetadata(fieldTypes2, fieldNames2);
-        plotStateGW.writeMetadata(0, m2);
-        
-            //Recreate and copy
-        DataSource plotStateDS = dsf.getDataSource("PlotState");
-        plotStateDS.open();
-        for (int i = 0; i < plotStateDS.getRowCount(); i++) {
-            plotStateGW.addValues(plotStateDS.getRow(i));
+    /**
+     * Appends the rows of a snapshot to the output tables.
+     * @param s the snapshot to write
+     */
+    void writeSnapshot(StateSnapshot s) throws NoSuchTableException, DataSourceCreationException, DriverException, IOException {
+        //Household table
+        for (int i = 0; i < s.getNewbornCount(); i++) {
+            householdTable.append(new Value[]{ValueFactory.createValue(s.getNewbornId(i)), ValueFactory.createValue(s.getNewbornMaxWealth(i))});
         }
-        plotStateDS.close();
-        
-            //Fill in new data
-        for (Parcel p : parcelList) {
-            plotStateGW.addValues(new Value[]{ValueFactory.createValue(p.getId()),
-                        ValueFactory.createValue(step.getStepNumber()),
-                        ValueFactory.createValue(p.getBuildType()),
-                        ValueFactory.createValue(p.getAverageWealth())
+
+        //PlotState table
+        for (int i = 0; i < s.getParcelCount(); i++) {
+            plotStateTable.append(new Value[]{ValueFactory.createValue(s.getPlotId(i)),
+                        ValueFactory.createValue(s.getStepNumber()),
+                        ValueFactory.createValue(s.getBuildType(i)),
+                        ValueFactory.createValue(s.getAverageWealth(i))
                     });
         }
-        
-        plotStateGW.writeRowIndexes();
-        plotStateGW.writeExtent();
-        plotStateGW.writeWritenRowCount();
-        plotStateGW.close();
-        dsf.getSourceManager().delete("PlotState");
-        File file2b = new File(outputPath + "/PlotState.gdms");
-        file2.renameTo(file2b);
-        dsf.getSourceManager().register("PlotState", file2b);
-        
+
         //HouseholdState table
-        File file3 = new File(outputPath + "/HouseholdState_temp.gdms");
-        GdmsWriter householdStateGW = new GdmsWriter(file3);
-        String[] fieldNames3 = {"householdID", "stepNumber", "plotID", "age", "alive"};
-        Type[] fieldTypes3 = {integ, integ, integ, integ, bool};
-        Metadata m3 = new DefaultMetadata(fieldTypes3, fieldNames3);
-        householdStateGW.writeMetadata(0, m3);
-        
-            //Old data
-        DataSource householdStateDS = dsf.getDataSource("HouseholdState");
-        householdStateDS.open();
-        for (int i = 0; i < householdStateDS.getRowCount(); i++) {
-            householdStateGW.addValues(householdStateDS.getRow(i));
+        for (int i = 0; i < s.getPopulation(); i++) {
+            householdStateTable.append(new Value[]{ValueFactory.createValue(s.getHouseholdId(i)),
+                        ValueFactory.createValue(s.getStepNumber()),
+                        ValueFactory.createValue(s.getHouseholdPlotId(i)),
+                        ValueFactory.createValue(s.getHouseholdAge(i)),
+                        ValueFactory.createValue(true)
+                    });
         }
-        householdStateDS.close();
-        
-            //New data
-        for (Parcel p : parcelList) {
-            for (Household hh : p.getHouseholdList()) {
-                householdStateGW.addValues(new Value[]{ValueFactory.createValue(hh.getId()),
-                            ValueFactory.createValue(step.getStepNumber()),
-                            ValueFactory.createValue(p.getId()),
-                            ValueFactory.createValue(hh.getAge()),
-                            ValueFactory.createValue(true)
-                        });
+
+        //Step table
+        stepTable.append(new Value[]{ValueFactory.createValue(s.getStepNumber()),
+            ValueFactory.createValue(s.getYear()),
+            ValueFactory.createValue(s.getPopulation())});
+    }
+
+    /**
+     * Waits for the pending snapshots, then finalizes the output tables so that they can
+     * be read through the data source factory.
+     */
+    public void checkpointOutputDatabase() throws NoSuchTableException, DataSourceCreationException, DriverException, IOException {
+        if (stateWriter != null) {
+            stateWriter.await();
+        }
+        checkpointTables();
+    }
+
+    /**
+     * Flushes and finalizes the output database, merges the segments of each table and
+     * stops the background writer. Called once the simulation is done, even if it failed :
+     * until then, each table name only gives the rows of its first segment.
+     */
+    public void closeOutputDatabase() throws NoSuchTableException, DataSourceCreationException, DriverException, IOException {
+        try {
+            checkpointOutputDatabase();
+            mergeTables();
+        } finally {
+            if (stateWriter != null) {
+                stateWriter.close();
+                stateWriter = null;
             }
         }
-        
-        householdStateGW.writeRowIndexes();
-        householdStateGW.writeExtent();
-        householdStateGW.writeWritenRowCount();
-        householdStateGW.close();
-        dsf.getSourceManager().delete("HouseholdState");
-        File file3b = new File(outputPath + "/HouseholdState.gdms");
-        file3.renameTo(file3b);
-        dsf.getSourceManager().register("HouseholdState", file3b);
-        
-        //Step table
-        File file4 = new File(outputPath + "/Step_temp.gdms");
-        GdmsWriter stepGW = new GdmsWriter(file4);
-        String[] fieldNames4 = {"stepNumber", "year", "population"};
-        Type[] fieldTypes4 = {integ, integ, integ};
-        Metadata m4 = new DefaultMetadata(fieldTypes4, fieldNames4);
-        stepGW.writeMetadata(0, m4);
-        
-            //Old data
-        DataSource stepDS = dsf.getDataSource("Step");
-        stepDS.open();
-        for (int i = 0; i < stepDS.getRowCount(); i++) {
-            stepGW.addValues(stepDS.getRow(i));
+    }
+
+    private void checkpointTables() throws NoSuchTableException, DataSourceCreationException, DriverException, IOException {
+        householdTable.checkpoint();
+        plotStateTable.checkpoint();
+        householdStateTable.checkpoint();
+        stepTable.checkpoint();
+    }
+
+    private void mergeTables() throws NoSuchTableException, DataSourceCreationException, DriverException, IOException {
+        householdTable.merge();
+        plotStateTable.merge();
+        householdStateTable.merge();
+        stepTable.merge();
+    }
+
+    /**
+     * Builds a homeless household, directly in the household table if there is one.
+     */
+    private Household newHousehold(int id, int age, int maxWealth) {
+        if (householdColumns == null) {
+            return new Household(id, age, maxWealth);
         }
-        stepDS.close();
-        
-            //New data
-        stepGW.addValues(new Value[]{ValueFactory.createValue(step.getStepNumber()),
-            ValueFactory.createValue(step.getYear()),
-            ValueFactory.createValue(getPopulation())});
-        
-        stepGW.writeRowIndexes();
-        stepGW.writeExtent();
-        stepGW.writeWritenRowCount();
-        stepGW.close();
-        dsf.getSourceManager().delete("Step");
-        File file4b = new File(outputPath + "/Step.gdms");
-        file4.renameTo(file4b);
-        dsf.getSourceManager().register("Step", file4b);
+        return new Household(householdColumns, id, age, maxWealth, null);
     }
 
     /**
      * Creates an immigrant Household and adds it to the homeless list.
      */
     public void createImmigrant() {
-        Random generator = new Random();
-        Household immigrant = new Household(lastCreatedHouseholdId, 20 + generator.nextInt(40), 10000 + generator.nextInt(50000));
+        Random generator = getRandom(RandomStreams.IMMIGRATION);
+        Household immigrant = newHousehold(lastCreatedHouseholdId, 20 + generator.nextInt(40), 10000 + generator.nextInt(50000));
         homelessList.add(immigrant);
         newbornList.add(immigrant);
         householdAdded(immigrant);
@@ -412,7 +544,7 @@ public final class Manager {
      * @param parentHousehold the procreating household
      */
     public void createNewborn(Household parentHousehold) {
-        Household newborn = new Household(lastCreatedHouseholdId, 20, parentHousehold.getMaxWealth());
+        Household newborn = newHousehold(lastCreatedHouseholdId, 20, parentHousehold.getMaxWealth());
         homelessList.add(newborn);
         newbornList.add(newborn);
         householdAdded(newborn);
@@ -447,7 +579,13 @@ public final class Manager {
      * @param p a Parcel
      */
     public void addParcel(Parcel p) {
+        p.setIndex(parcelList.size());
         parcelList.add(p);
+        p.setAgingEngine(agingEngine);
+        if (householdColumns != null) {
+            p.setHouseholdTable(householdColumns);
+        }
+        parcelTable.add(p);
     }
 
     /**
@@ -456,7 +594,7 @@ public final class Manager {
      * @throws DriverException 
      */
     public void initializeSimulation() throws DataSourceCreationException, DriverException {
-        Random generator = new Random();
+        Random generator = getRandom(RandomStreams.INITIALIZATION);
         File initialFile = new File(dataPath);
         DataSource initialBase = dsf.getDataSource(initialFile);
         initialBase.open();
@@ -484,7 +622,7 @@ public final class Manager {
                 
                 //20-39 years old
                 for (int k = 0; k < initialBase.getInt(j, "localPop20"); k++) {
-                    Household newHousehold = new Household(lastCreatedHouseholdId,
+                    Household newHousehold = newHousehold(lastCreatedHouseholdId,
                             20 + generator.nextInt(20),
                             (int) ((int) (0.90 * maxWealth)) + generator.nextInt((int) (0.20 * maxWealth)));
                     lastCreatedHouseholdId++;
@@ -494,7 +632,7 @@ public final class Manager {
 
                 //40-59 years old
                 for (int k = 0; k < initialBase.getInt(j, "localPop40"); k++) {
-                    Household newHousehold = new Household(lastCreatedHouseholdId,
+                    Household newHousehold = newHousehold(lastCreatedHouseholdId,
                             40 + generator.nextInt(20),
                             (int) ((int) (0.90 * maxWealth)) + generator.nextInt((int) (0.20 * maxWealth)));
                     lastCreatedHouseholdId++;
@@ -504,7 +642,7 @@ public final class Manager {
 
                 //60-79 years old
                 for (int k = 0; k < initialBase.getInt(j, "localPop60"); k++) {
-                    Household newHousehold = new Household(lastCreatedHouseholdId,
+                    Household newHousehold = newHousehold(lastCreatedHouseholdId,
                             60 + generator.nextInt(20),
                             (int) ((int) (0.90 * maxWealth)) + generator.nextInt((int) (0.20 * maxWealth)));
                     lastCreatedHouseholdId++;
@@ -528,6 +666,9 @@ public final class Manager {
      * @param h the household added
      */
     private void householdAdded(Household h) {
+        if (householdColumns != null) {
+            householdColumns.add(h);
+        }
         for (ManagerListener ml : listeners) {
             ml.householdAdded(h);
         }
@@ -538,6 +679,9 @@ public final class Manager {
      * @param h the deleted household 
      */
     private void householdDeleted(Household h) {
+        if (householdColumns != null) {
+            householdColumns.remove(h);
+        }
         for (ManagerListener ml : listeners) {
             ml.householdDeleted(h);
         }
@@ -571,8 +715,17 @@ public final class Manager {
 
     /**
      * Checks which households wants to move and moves them out. Warns the listeners when a household moves.
+     * Independent decisions are taken by scanning the household table, if there is one.
      */
     public void whoIsMoving() {
+        if (householdColumns != null && isMovingDM.hasIndependentDecisions()) {
+            whoIsMovingByColumns();
+            return;
+        }
+        if (movingParallelism > 1 && isMovingDM.hasIndependentDecisions()) {
+            whoIsMovingInParallel();
+            return;
+        }
         int moversTempCount = 0;
         for (Parcel p : parcelList) {
             Stack<Household> areGoingToMove = new Stack<Household>();
@@ -592,12 +745,161 @@ public final class Manager {
     }
 
     /**
-     * Moves in every homeless household
+     * Takes the moving decisions by scanning the household table, in parallel chunks of
+     * slots if the moving parallelism is above 1, then moves out the movers in parcel order,
+     * so that the homelessList is the same as when walking the parcels.
+     */
+    private void whoIsMovingByColumns() {
+        final HouseholdTable t = householdColumns;
+        final boolean[] moving = new boolean[t.getCapacity()];
+        if (movingParallelism == 1) {
+            decideByColumns(t, moving, 0, moving.length);
+        } else {
+            final int chunkSize = (moving.length + movingParallelism * 8 - 1) / (movingParallelism * 8);
+            ExecutorService executor = Executors.newFixedThreadPool(movingParallelism, new DaemonThreadFactory("gdms-usm moving decisions"));
+            List<Future<?>> chunks = new ArrayList<Future<?>>();
+            try {
+                for (int from = 0; from < moving.length; from += chunkSize) {
+                    final int start = from;
+                    final int end = Math.min(moving.length, from + chunkSize);
+                    chunks.add(executor.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            decideByColumns(t, moving, start, end);
+                            return null;
+                        }
+                    }));
+                }
+                for (Future<?> chunk : chunks) {
+                    chunk.get();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Moving decisions were interrupted.", ex);
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException("Moving decisions failed.", ex.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        
+        //Sorting the movers by parcel index, then by resident position, gives the parcel walk order.
+        int count = 0;
+        long[] keys = new long[t.size()];
+        for (int slot = t.nextLive(0); slot >= 0; slot = t.nextLive(slot + 1)) {
+            if (moving[slot]) {
+                keys[count++] = ((long) t.getParcelIndex(slot) << 32) | t.getHousehold(slot).getResidentSlot();
+            }
+        }
+        Arrays.sort(keys, 0, count);
+        //Every household is found before the first one moves out and changes the resident positions.
+        List<Household> movers = new ArrayList<Household>(count);
+        for (int k = 0; k < count; k++) {
+            movers.add(parcelList.get((int) (keys[k] >>> 32)).getResident((int) keys[k]));
+        }
+        for (Household h : movers) {
+            h.moveOut();
+            homelessList.add(h);
+            householdMoved(h);
+        }
+        moversCount = count;
+    }
+
+    /**
+     * Takes the moving decisions of the housed households of a range of table slots.
+     */
+    private void decideByColumns(HouseholdTable t, boolean[] moving, int from, int to) {
+        for (int slot = t.nextLive(from); slot >= 0 && slot < to; slot = t.nextLive(slot + 1)) {
+            if (t.getParcelIndex(slot) >= 0) {
+                moving[slot] = isMovingDM.isMoving(t, slot);
+            }
+        }
+    }
+
+    /**
+     * Takes the moving decisions of the parcels in parallel, chunk by chunk, then moves out
+     * the movers in parcel order, so that the homelessList is the same as in sequential mode.
+     */
+    private void whoIsMovingInParallel() {
+        int chunkCount = Math.min(parcelList.size(), movingParallelism * 8);
+        if (chunkCount == 0) {
+            moversCount = 0;
+            return;
+        }
+        final int chunkSize = (parcelList.size() + chunkCount - 1) / chunkCount;
+        ExecutorService executor = Executors.newFixedThreadPool(movingParallelism, new DaemonThreadFactory("gdms-usm moving decisions"));
+        List<Future<List<Household>>> chunks = new ArrayList<Future<List<Household>>>();
+        try {
+            for (int from = 0; from < parcelList.size(); from += chunkSize) {
+                final int start = from;
+                final int end = Math.min(parcelList.size(), from + chunkSize);
+                chunks.add(executor.submit(new Callable<List<Household>>() {
+                    @Override
+                    public List<Household> call() {
+                        List<Household> movers = new ArrayList<Household>();
+                        for (int i = start; i < end; i++) {
+                            for (Household h : parcelList.get(i).getHouseholdList()) {
+                                if (isMovingDM.isMoving(h)) {
+                                    movers.add(h);
+                                }
+                            }
+                        }
+                        return movers;
+                    }
+                }));
+            }
+            //Every decision is taken before the first household moves out.
+            List<List<Household>> movers = new ArrayList<List<Household>>();
+            for (Future<List<Household>> chunk : chunks) {
+                movers.add(chunk.get());
+            }
+            int moversTempCount = 0;
+            for (List<Household> chunk : movers) {
+                for (Household h : chunk) {
+                    h.moveOut();
+                    homelessList.add(h);
+                    householdMoved(h);
+                    moversTempCount++;
+                }
+            }
+            moversCount = moversTempCount;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Moving decisions were interrupted.", ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Moving decisions failed.", ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Moves in every homeless household, by household class first if the batched move in is set,
+     * or with several threads first if the move in parallelism is above 1.
      */
     public void everybodyMovesIn() throws NoSuchTableException, DataSourceCreationException, DriverException {
+        moveInConflicts = 0;
+        if (movingInPS instanceof GaussParcelSelector && parcelTable.size() == parcelList.size()) {
+            List<Household> lost = Collections.emptyList();
+            if (batchedMoveIn) {
+                lost = new BatchedMoveIn(this).moveIn(homelessList);
+            } else if (moveInParallelism > 1) {
+                ParallelMoveIn parallelMoveIn = new ParallelMoveIn(this, moveInParallelism);
+                lost = parallelMoveIn.moveIn(homelessList);
+                moveInConflicts = parallelMoveIn.getConflicts();
+            }
+            for (Household h : lost) {
+                householdDeleted(h);
+            }
+        }
         while (!homelessList.isEmpty()) {
             Household h = homelessList.pop();
-            h.moveIn(movingInPS.selectedParcel(h));
+            Parcel p = movingInPS.selectedParcel(h);
+            if (p != null) {
+                h.moveIn(p);
+            } else {
+                householdDeleted(h);
+            }
         }
     }
     
@@ -620,7 +922,11 @@ public final class Manager {
             
         for (Parcel p : parcelList) {
             if (p.getBuildType() != 7) {
+                int oldBuildType = p.getBuildType();
                 p.updateBuildType(threshold_1, threshold_2, threshold_3, threshold_4);
+                if (p.getBuildType() != oldBuildType) {
+                    scoreCache.invalidate(p);
+                }
             }
         }
     }
@@ -633,27 +939,67 @@ public final class Manager {
     }
 
     /**
-     * Calls grow method for every household and checks if it needs to be killed or if it needs to procreate.
+     * Makes every housed household one year older through the aging engine, then lets the
+     * households turning 60 procreate and kills the ones older than 79. Births and deaths only
+     * visit their cohorts, but aging still visits every household under 60, see CohortAgingEngine.
      */
     public void everybodyGrows() {
-        LinkedList<Household> deadPeople = new LinkedList<Household>();
         newbornNumber = 0;
         deadNumber = 0;
-        for (Parcel p : parcelList) {
-            for (Household h : p.getHouseholdList()) {
-                h.grow();
-                if (h.getAge() > 79) {
-                    deadPeople.add(h);
-                    deadNumber++;
-                } else if (h.getAge() == 60) {
-                    createNewborn(h);
-                    newbornNumber++;
-                }
-            }
+        agingEngine.advance();
+        for (Household h : agingEngine.getCohort(60)) {
+            createNewborn(h);
+            newbornNumber++;
         }
-        for (Household h : deadPeople) {
+        for (Household h : agingEngine.getCohortsAtLeast(80)) {
             kill(h);
+            deadNumber++;
+        }
+    }
+
+    /**
+     * Keeps the households in a columnar table, which the independent moving decisions
+     * then scan instead of walking the parcels, or lets each household live alone in a
+     * one-slot table. Must be set before any parcel is added. True by default, as the
+     * one-slot tables cost several times the memory of the columns.
+     * @param enabled true to keep a household table
+     */
+    public void setHouseholdTable(boolean enabled) {
+        if (!parcelList.isEmpty()) {
+            throw new IllegalStateException("The household table must be set before adding parcels.");
         }
+        householdColumns = enabled ? new HouseholdTable(parcelList) : null;
+    }
+
+    /**
+     * Gets the columnar table of the households. Every housed household is registered in
+     * it, as well as the homeless households created by the manager.
+     * @return the household table, or null if it is disabled
+     */
+    public HouseholdTable getHouseholdTable() {
+        return householdColumns;
+    }
+
+    /**
+     * Gets the columnar table of the parcels, indexed like the parcel list.
+     * @return the parcel table
+     */
+    public ParcelTable getParcelTable() {
+        return parcelTable;
+    }
+
+    /**
+     * @return the aging engine of the housed households
+     */
+    public CohortAgingEngine getAgingEngine() {
+        return agingEngine;
+    }
+
+    /**
+     * @return the parcel score cache
+     */
+    public ParcelScoreCache getScoreCache() {
+        return scoreCache;
     }
 
     /**
@@ -663,6 +1009,18 @@ public final class Manager {
         return nbtc;
     }
 
+    /**
+     * Gets the cache of the neighbour graph : a file named after the input data file, in the
+     * neighbour cache folder or next to the data, so that runs writing to different output
+     * folders share it. It is only read back for the same input data and buffer size.
+     * @return the neighbour graph cache
+     */
+    public NeighbourGraphCache getNeighbourGraphCache() {
+        File dataFile = new File(dataPath);
+        File folder = neighbourCacheDirectory != null ? neighbourCacheDirectory : dataFile.getAbsoluteFile().getParentFile();
+        return new NeighbourGraphCache(new File(folder, dataFile.getName() + ".neighbours"), dataFile);
+    }
+
     /**
      * @return the isMovingDM
      */
@@ -712,6 +1070,8 @@ public final class Manager {
         threshold_4 = globals.getDouble(0, "threshold_4");
         
         globals.close();
+        scoreCache.clear();
+        isMovingDM.globalsInitialized();
     }
 
     /**
@@ -30,6 +30,9 @@
  */
 package org.gdms.usm;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.gdms.data.DataSourceCreationException;
 import org.gdms.data.NoSuchTableException;
@@ -41,14 +44,180 @@ import org.gdms.driver.DriverException;
  */
 public abstract class NearbyBuildTypeCalculator {
 
+    /**
+     * Size of the arrays indexed by build type (build types go from 1 to 7).
+     */
+    public static final int BUILD_TYPE_SLOTS = 8;
+
     private Manager myManager;
+    private NeighbourGraphBuilder graphBuilder;
+    private Parcel[][] dependents;
+    private long upgradePotentialHits;
+    private long upgradePotentialMisses;
+
+    /**
+     * Calculates the nearby build type areas and returns them in a map.
+     * Only the build types present in the neighbourhood are keys of the map.
+     * @param p the parcel
+     * @return the map with areas associated to a build type
+     */
+    public Map<Integer, Double> calculate(Parcel p) throws NoSuchTableException, DataSourceCreationException, DriverException {
+        double[] areas = new double[BUILD_TYPE_SLOTS];
+        calculate(p, areas);
+        HashMap<Integer, Double> buildTypeAreas = new HashMap<Integer, Double>();
+        for (Parcel n : getNeighbours(p)) {
+            buildTypeAreas.put(n.getBuildType(), areas[n.getBuildType()]);
+        }
+        return buildTypeAreas;
+    }
+
+    /**
+     * Calculates the nearby build type areas into the given array, indexed by build type.
+     * Nothing is allocated, and the neighbour areas are the ones computed once by the parcels.
+     * @param p the parcel
+     * @param areas an array of at least BUILD_TYPE_SLOTS elements, overwritten
+     */
+    public void calculate(Parcel p, double[] areas) {
+        double[] table = p.getNearbyBuildTypeTable();
+        if (table != null) {
+            System.arraycopy(table, 0, areas, 0, BUILD_TYPE_SLOTS);
+        } else {
+            sumNeighbourAreas(p, areas);
+        }
+    }
+
+    private void sumNeighbourAreas(Parcel p, double[] areas) {
+        Arrays.fill(areas, 0, BUILD_TYPE_SLOTS, 0.0);
+        Parcel[] theNeighbours = getNeighbours(p);
+        for (int i = 0; i < theNeighbours.length; i++) {
+            areas[theNeighbours[i].getBuildType()] += theNeighbours[i].getArea();
+        }
+    }
+
+    /**
+     * Gives every parcel its table of nearby build type areas, and builds the reverse
+     * neighbour lists used to update these tables. Must be called by setNeighbours once
+     * the neighbours are known.
+     */
+    protected final void initializeNearbyBuildTypeTables() {
+        List<Parcel> parcels = getManager().getParcelList();
+        int[] counts = new int[parcels.size()];
+        for (Parcel p : parcels) {
+            double[] table = new double[BUILD_TYPE_SLOTS];
+            sumNeighbourAreas(p, table);
+            p.setNearbyBuildTypeTable(table);
+            for (Parcel n : getNeighbours(p)) {
+                counts[n.getIndex()]++;
+            }
+        }
+        dependents = new Parcel[parcels.size()][];
+        for (int i = 0; i < counts.length; i++) {
+            dependents[i] = new Parcel[counts[i]];
+            counts[i] = 0;
+        }
+        for (Parcel p : parcels) {
+            for (Parcel n : getNeighbours(p)) {
+                dependents[n.getIndex()][counts[n.getIndex()]++] = p;
+            }
+        }
+    }
+
+    /**
+     * @return the builder used to compute the neighbours, or null if the calculator computes them itself
+     */
+    public final NeighbourGraphBuilder getGraphBuilder() {
+        return graphBuilder;
+    }
+
+    /**
+     * Sets the builder computing the neighbours from an in-memory index, in parallel or by distance search.
+     * Step.initialize sets a builder reading the neighbour graph cache of the manager when none is set,
+     * so the calculator only computes the neighbours itself, from the Plot spatial index for the
+     * buffer calculators, when setNeighbours is called without a builder.
+     * @param graphBuilder the builder, or null
+     */
+    public final void setGraphBuilder(NeighbourGraphBuilder graphBuilder) {
+        this.graphBuilder = graphBuilder;
+    }
+
+    /**
+     * Computes the neighbours of every parcel with the graph builder, if one is set, puts them
+     * in the given map and initializes the nearby build type tables.
+     * @param neighbours the map receiving the neighbours of each parcel
+     * @return false if no builder is set, the neighbours being left to the calculator
+     */
+    protected final boolean buildNeighbourGraph(Map<Parcel, Parcel[]> neighbours) {
+        if (graphBuilder == null) {
+            return false;
+        }
+        List<Parcel> parcels = getManager().getParcelList();
+        Parcel[][] graph = graphBuilder.build(parcels, getManager().getBufferSize());
+        for (int i = 0; i < graph.length; i++) {
+            neighbours.put(parcels.get(i), graph[i]);
+        }
+        initializeNearbyBuildTypeTables();
+        return true;
+    }
+
+    /**
+     * Propagates a build type change to the tables of the parcels having the given parcel as neighbour,
+     * and makes them compute their upgrade potential again.
+     * @param p the parcel whose build type changed
+     * @param oldBuildType its previous build type
+     */
+    void buildTypeChanged(Parcel p, int oldBuildType) {
+        if (dependents == null || p.getIndex() < 0 || p.getIndex() >= dependents.length) {
+            return;
+        }
+        for (Parcel q : dependents[p.getIndex()]) {
+            double[] table = q.getNearbyBuildTypeTable();
+            table[oldBuildType] -= p.getArea();
+            table[p.getBuildType()] += p.getArea();
+            q.invalidateUpgradePotential();
+        }
+    }
+
+    void upgradePotentialHit() {
+        upgradePotentialHits++;
+    }
+
+    void upgradePotentialMissed() {
+        upgradePotentialMisses++;
+    }
 
     /**
-     * Calculates the nearby build type proportions and returns them in a map.
+     * @return the number of upgrade potentials read from the parcel caches
+     */
+    public long getUpgradePotentialHits() {
+        return upgradePotentialHits;
+    }
+
+    /**
+     * @return the number of upgrade potentials computed, the parcel cache being empty or out of date
+     */
+    public long getUpgradePotentialMisses() {
+        return upgradePotentialMisses;
+    }
+
+    /**
+     * Resets the upgrade potential hit and miss counters.
+     */
+    public void resetUpgradePotentialCounters() {
+        upgradePotentialHits = 0;
+        upgradePotentialMisses = 0;
+    }
+
+    /**
+     * Gets the parcels having the given parcel as neighbour.
      * @param p the parcel
-     * @return the map with proportions associated to a build type
+     * @return the parcels whose neighbourhood contains p, or null if the neighbours are not set
      */
-    public abstract Map<Integer, Double> calculate(Parcel p) throws NoSuchTableException, DataSourceCreationException, DriverException;
+    Parcel[] getDependents(Parcel p) {
+        if (dependents == null || p.getIndex() < 0 || p.getIndex() >= dependents.length) {
+            return null;
+        }
+        return dependents[p.getIndex()];
+    }
     
     /**
      * Calculates the neighbours of each parcel and stores them in a map.
@@ -0,0 +1,229 @@
+/**
+ *
+ * Gdms-USM is a library dedicated to multi-agent simulation for modeling urban sprawl.
+ * It is based on the GDMS library. It uses the OrbisGIS renderer to display results.
+ *
+ * This version is developed at French IRSTV Institute and at LIENSs UMR 7266 laboratory
+ * (http://lienss.univ-larochelle.fr/) as part of the VegDUD project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-09-VILL-0007.
+ *
+ * Gdms-USM is distributed under GPL 3 license. It is maintained by the "Atelier SIG" team of
+ * the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Gdms-USM is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Gdms-USM is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Gdms-USM. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://trac.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.usm;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.index.strtree.STRtree;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Builds the neighbour graph of a list of parcels from an in-memory spatial index,
+ * partitioning the parcels among several threads.
+ * Neighbours are sorted by position in the parcel list, so the result does not depend
+ * on the parallelism.
+ * In distance search mode, no buffer geometry is built : candidates come from the envelope
+ * expanded by the buffer size and are kept if they lie within that distance. This gives the
+ * buffer neighbours up to the approximation of the buffer arcs.
+ * @author Thomas Salliou
+ */
+public final class NeighbourGraphBuilder {
+
+    private static final int CHUNKS_PER_THREAD = 8;
+    private int parallelism;
+    private boolean distanceSearch;
+    private NeighbourGraphCache cache;
+
+    /**
+     * Builds a new NeighbourGraphBuilder using every available processor.
+     */
+    public NeighbourGraphBuilder() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism the number of threads used to build the graph
+     */
+    public NeighbourGraphBuilder(int parallelism) {
+        setParallelism(parallelism);
+    }
+
+    /**
+     * @return the number of threads used to build the graph
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param parallelism the number of threads used to build the graph
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1.");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return true if neighbours are searched by distance instead of buffer intersection
+     */
+    public boolean isDistanceSearch() {
+        return distanceSearch;
+    }
+
+    /**
+     * @param distanceSearch true to search neighbours by distance instead of buffer intersection
+     */
+    public void setDistanceSearch(boolean distanceSearch) {
+        this.distanceSearch = distanceSearch;
+    }
+
+    /**
+     * @return the cache the graph is read from and written to, or null
+     */
+    public NeighbourGraphCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @param cache the cache the graph is read from and written to, or null to always compute it
+     */
+    public void setCache(NeighbourGraphCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Computes the neighbours of every parcel : the parcels intersecting its geometry buffered by bufferSize.
+     * @param parcels the parcels, in the order of the Plot table
+     * @param bufferSize the buffer size
+     * @return the neighbours of each parcel, indexed like the list
+     */
+    public Parcel[][] build(List<Parcel> parcels, double bufferSize) {
+        if (cache == null) {
+            return compute(parcels, bufferSize);
+        }
+        try {
+            Parcel[][] graph = cache.load(parcels, bufferSize, distanceSearch);
+            if (graph != null) {
+                return graph;
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(NeighbourGraphBuilder.class.getName()).log(Level.WARNING, "Cannot read the neighbour graph cache.", ex);
+        }
+        Parcel[][] graph = compute(parcels, bufferSize);
+        try {
+            cache.store(graph, parcels, bufferSize, distanceSearch);
+        } catch (IOException ex) {
+            Logger.getLogger(NeighbourGraphBuilder.class.getName()).log(Level.WARNING, "Cannot write the neighbour graph cache.", ex);
+        }
+        return graph;
+    }
+
+    private Parcel[][] compute(final List<Parcel> parcels, final double bufferSize) {
+        final STRtree index = new STRtree();
+        for (int i = 0; i < parcels.size(); i++) {
+            index.insert(parcels.get(i).getTheGeom().getEnvelopeInternal(), Integer.valueOf(i));
+        }
+        //Building the tree up front : queries are then read-only and can run concurrently.
+        index.build();
+
+        final Parcel[][] result = new Parcel[parcels.size()][];
+        final boolean byDistance = distanceSearch;
+        if (parallelism == 1) {
+            computeNeighbours(parcels, index, bufferSize, distanceSearch, 0, parcels.size(), result);
+            return result;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, new DaemonThreadFactory("gdms-usm neighbour builder"));
+        try {
+            int chunkSize = Math.max(1, parcels.size() / (parallelism * CHUNKS_PER_THREAD) + 1);
+            List<Future<?>> tasks = new ArrayList<Future<?>>();
+            for (int from = 0; from < parcels.size(); from += chunkSize) {
+                final int start = from;
+                final int end = Math.min(parcels.size(), from + chunkSize);
+                tasks.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        computeNeighbours(parcels, index, bufferSize, byDistance, start, end, result);
+                    }
+                }));
+            }
+            for (Future<?> f : tasks) {
+                f.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Neighbour graph construction was interrupted.", ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Neighbour graph construction failed.", ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return result;
+    }
+
+    private static void computeNeighbours(List<Parcel> parcels, STRtree index, double bufferSize, boolean byDistance, int from, int to, Parcel[][] result) {
+        for (int k = from; k < to; k++) {
+            Parcel p = parcels.get(k);
+            Geometry consideredGeom = p.getTheGeom();
+            Geometry bufferedGeom = null;
+            Envelope searchEnvelope;
+            if (byDistance) {
+                searchEnvelope = new Envelope(consideredGeom.getEnvelopeInternal());
+                searchEnvelope.expandBy(bufferSize);
+            } else {
+                bufferedGeom = consideredGeom.buffer(bufferSize);
+                searchEnvelope = bufferedGeom.getEnvelopeInternal();
+            }
+
+            List<?> candidates = index.query(searchEnvelope);
+            int[] intersected = new int[candidates.size()];
+            int count = 0;
+            for (Object o : candidates) {
+                int i = ((Integer) o).intValue();
+                if (i == p.getId()) {
+                    continue;
+                }
+                Geometry other = parcels.get(i).getTheGeom();
+                if (byDistance ? consideredGeom.isWithinDistance(other, bufferSize) : bufferedGeom.intersects(other)) {
+                    intersected[count++] = i;
+                }
+            }
+            Arrays.sort(intersected, 0, count);
+
+            Parcel[] intersectedParcels = new Parcel[count];
+            for (int l = 0; l < count; l++) {
+                intersectedParcels[l] = parcels.get(intersected[l]);
+            }
+            result[k] = intersectedParcels;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/**
+ *
+ * Gdms-USM is a library dedicated to multi-agent simulation for modeling urban sprawl.
+ * It is based on the GDMS library. It uses the OrbisGIS renderer to display results.
+ *
+ * This version is developed at French IRSTV Institute and at LIENSs UMR 7266 laboratory
+ * (http://lienss.univ-larochelle.fr/) as part of the VegDUD project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-09-VILL-0007.
+ *
+ * Gdms-USM is distributed under GPL 3 license. It is maintained by the "Atelier SIG" team of
+ * the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Gdms-USM is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Gdms-USM is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Gdms-USM. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://trac.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.usm;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores a neighbour graph in a binary file, so that it is computed only once for a
+ * given input data file and buffer size.
+ * The file starts with the buffer size and search mode, then the length, modification
+ * date and path of the input data file and a SHA-1 key of its content, then holds the
+ * graph in compressed sparse row layout : parcel count, neighbour count, offsets and
+ * neighbour indexes, all read through a memory mapping.
+ * The data file is only hashed when its length matches but its date or path changed, so
+ * that an unchanged file is recognized without being read. A file which does not match
+ * is ignored and replaced by the next store.
+ * @author Thomas Salliou
+ */
+public final class NeighbourGraphCache {
+
+    private static final int MAGIC = 0x55534D47;
+    private static final int VERSION = 2;
+    private static final int KEY_LENGTH = 20;
+    private static final int MODIFIED_OFFSET = 4 + 4 + 8 + 1 + 8;
+    private final File cacheFile;
+    private final File dataFile;
+
+    /**
+     * @param cacheFile the file holding the graph
+     * @param dataFile the input data file the graph is computed from
+     */
+    public NeighbourGraphCache(File cacheFile, File dataFile) {
+        this.cacheFile = cacheFile;
+        this.dataFile = dataFile;
+    }
+
+    /**
+     * @return the file holding the graph
+     */
+    public File getCacheFile() {
+        return cacheFile;
+    }
+
+    /**
+     * Reads the graph if the cache file matches the input data and parameters.
+     * @param parcels the parcels, in the order of the Plot table
+     * @param bufferSize the buffer size
+     * @param distanceSearch the search mode
+     * @return the neighbours of each parcel, or null if there is no matching cache
+     * @throws IOException
+     */
+    public Parcel[][] load(List<Parcel> parcels, double bufferSize, boolean distanceSearch) throws IOException {
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+        boolean refreshModified = false;
+        RandomAccessFile raf = new RandomAccessFile(cacheFile, "r");
+        Parcel[][] graph;
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < MODIFIED_OFFSET + 8 + 2 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || buffer.getDouble() != bufferSize || buffer.get() != (distanceSearch ? 1 : 0)
+                    || buffer.getLong() != dataFile.length()) {
+                return null;
+            }
+            long modified = buffer.getLong();
+            byte[] path = new byte[buffer.getShort() & 0xFFFF];
+            if (buffer.remaining() < path.length + KEY_LENGTH + 8) {
+                return null;
+            }
+            buffer.get(path);
+            byte[] storedKey = new byte[KEY_LENGTH];
+            buffer.get(storedKey);
+            boolean samePath = Arrays.equals(path, dataPath());
+            if (modified != dataFile.lastModified() || !samePath) {
+                if (!Arrays.equals(storedKey, computeKey())) {
+                    return null;
+                }
+                refreshModified = samePath;
+            }
+            int n = buffer.getInt();
+            int m = buffer.getInt();
+            if (n != parcels.size() || buffer.remaining() != 4L * (n + 1 + (long) m)) {
+                return null;
+            }
+            IntBuffer ints = buffer.asIntBuffer();
+            graph = new Parcel[n][];
+            int start = ints.get(0);
+            for (int i = 0; i < n; i++) {
+                int end = ints.get(i + 1);
+                Parcel[] neighbours = new Parcel[end - start];
+                for (int j = start; j < end; j++) {
+                    neighbours[j - start] = parcels.get(ints.get(n + 1 + j));
+                }
+                graph[i] = neighbours;
+                start = end;
+            }
+        } finally {
+            raf.close();
+        }
+        if (refreshModified) {
+            //Same content with a new date : record the date so that the next load does not hash it again.
+            RandomAccessFile out = new RandomAccessFile(cacheFile, "rw");
+            try {
+                out.seek(MODIFIED_OFFSET);
+                out.writeLong(dataFile.lastModified());
+            } finally {
+                out.close();
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Writes the graph into the cache file.
+     * @param graph the neighbours of each parcel, indexed like the parcel list
+     * @param parcels the parcels, in the order of the Plot table
+     * @param bufferSize the buffer size
+     * @param distanceSearch the search mode
+     * @throws IOException
+     */
+    public void store(Parcel[][] graph, List<Parcel> parcels, double bufferSize, boolean distanceSearch) throws IOException {
+        long modified = dataFile.lastModified();
+        byte[] key = computeKey();
+        byte[] path = dataPath();
+        Map<Parcel, Integer> positions = new IdentityHashMap<Parcel, Integer>();
+        for (int i = 0; i < parcels.size(); i++) {
+            positions.put(parcels.get(i), Integer.valueOf(i));
+        }
+        int m = 0;
+        for (int i = 0; i < graph.length; i++) {
+            m += graph[i].length;
+        }
+        File tempFile = new File(cacheFile.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeDouble(bufferSize);
+            out.writeByte(distanceSearch ? 1 : 0);
+            out.writeLong(dataFile.length());
+            out.writeLong(modified);
+            out.writeShort(path.length);
+            out.write(path);
+            out.write(key);
+            out.writeInt(graph.length);
+            out.writeInt(m);
+            int offset = 0;
+            out.writeInt(offset);
+            for (int i = 0; i < graph.length; i++) {
+                offset += graph[i].length;
+                out.writeInt(offset);
+            }
+            for (int i = 0; i < graph.length; i++) {
+                for (Parcel q : graph[i]) {
+                    out.writeInt(positions.get(q).intValue());
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if (cacheFile.exists() && !cacheFile.delete()) {
+            throw new IOException("Cannot replace " + cacheFile);
+        }
+        if (!tempFile.renameTo(cacheFile)) {
+            throw new IOException("Cannot rename " + tempFile + " to " + cacheFile);
+        }
+    }
+
+    private byte[] dataPath() throws IOException {
+        byte[] path = dataFile.getCanonicalPath().getBytes("UTF-8");
+        if (path.length > 0xFFFF) {
+            throw new IOException("The path of " + dataFile + " is too long.");
+        }
+        return path;
+    }
+
+    private byte[] computeKey() throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        InputStream in = new FileInputStream(dataFile);
+        try {
+            byte[] chunk = new byte[65536];
+            int read;
+            while ((read = in.read(chunk)) != -1) {
+                digest.update(chunk, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return digest.digest();
+    }
+}
@@ -0,0 +1,250 @@
+/**
+ *
+ * Gdms-USM is a library dedicated to multi-agent simulation for modeling urban sprawl.
+ * It is based on the GDMS library. It uses the OrbisGIS renderer to display results.
+ *
+ * This version is developed at French IRSTV Institute and at LIENSs UMR 7266 laboratory
+ * (http://lienss.univ-larochelle.fr/) as part of the VegDUD project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-09-VILL-0007.
+ *
+ * Gdms-USM is distributed under GPL 3 license. It is maintained by the "Atelier SIG" team of
+ * the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Gdms-USM is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Gdms-USM is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Gdms-USM. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://trac.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.usm;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Stack;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Moves the homeless households in with several threads selecting parcels as
+ * GaussParcelSelector would. The homeless are split in chunks, each one selecting
+ * with its own random stream, and the free places counted before the round are dealt
+ * out to the chunks, place k of parcel i going to chunk (i + k) modulo the chunk count.
+ * A chunk thus only claims its own places, without seeing the other threads.
+ * The parcels are then only modified by the calling thread, in the homeless order ;
+ * a household whose chunk had no place left for it, or whose parcel got full anyway,
+ * the count of free places being rounded, selects again in the next round.
+ * Nothing depends on thread timing, so that a run is reproducible for a given seed and
+ * parallelism, although it does not draw as the sequential move in.
+ * Affordability is judged on the average wealths before each round.
+ * @author Thomas Salliou
+ */
+public final class ParallelMoveIn {
+
+    private static final int CHUNKS_PER_THREAD = 8;
+    private static final int MAX_ROUNDS = 4;
+    private static final int NO_SHARE = -2;
+    private final Manager manager;
+    private final int parallelism;
+    private int conflicts;
+
+    /**
+     * Builds a ParallelMoveIn.
+     * @param m the manager, whose parcel table must hold every parcel
+     * @param parallelism the number of threads selecting the parcels
+     */
+    public ParallelMoveIn(Manager m, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1.");
+        }
+        this.manager = m;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Moves in the homeless households.
+     * @param homeless the homeless households ; those still without a place after the last
+     * round are left in it, to be moved in one by one
+     * @return the households which found no candidate parcel, step listeners being told
+     */
+    public List<Household> moveIn(Stack<Household> homeless) {
+        List<Household> households = new ArrayList<Household>(homeless.size());
+        while (!homeless.isEmpty()) {
+            households.add(homeless.pop());
+        }
+        List<Household> lost = new ArrayList<Household>();
+        if (households.isEmpty()) {
+            return lost;
+        }
+        
+        List<Parcel> parcels = manager.getParcelList();
+        ParcelTable table = manager.getParcelTable();
+        ParcelScoreCache cache = manager.getScoreCache();
+        BitSet open = new BitSet(parcels.size());
+        double[] buildTypeAreas = new double[NearbyBuildTypeCalculator.BUILD_TYPE_SLOTS];
+        for (int i = table.nextVacant(0); i >= 0; i = table.nextVacant(i + 1)) {
+            if (!(table.getBuildType(i) == 1 && parcels.get(i).getUpgradePotential(buildTypeAreas) < 0.1)) {
+                open.set(i);
+            }
+        }
+        //the cache is updated lazily, which must not happen in the worker threads
+        for (Household h : households) {
+            cache.getScores(h);
+        }
+        
+        int homelessCount = households.size();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, new DaemonThreadFactory("gdms-usm move in"));
+        try {
+            for (int round = 0; round < MAX_ROUNDS && !households.isEmpty(); round++) {
+                int[] capacity = new int[parcels.size()];
+                for (int i = open.nextSetBit(0); i >= 0; i = open.nextSetBit(i + 1)) {
+                    //a parcel which is not full has a place, whatever the rounding of the count
+                    capacity[i] = parcels.get(i).isFull() ? 0 : Math.max(1, table.getFreeCapacity(i));
+                }
+                //the wealth order is updated lazily too
+                table.prepareFilter();
+                int[] targets = selectAll(executor, households, round * homelessCount, capacity);
+                
+                List<Household> left = new ArrayList<Household>();
+                for (int k = 0; k < targets.length; k++) {
+                    Household h = households.get(k);
+                    if (targets[k] == NO_SHARE) {
+                        left.add(h);
+                    } else if (targets[k] < 0) {
+                        for (StepListener sl : manager.getStep().getListeners()) {
+                            sl.householdDisappeared(h);
+                        }
+                        lost.add(h);
+                    } else if (parcels.get(targets[k]).isFull()) {
+                        conflicts++;
+                        left.add(h);
+                    } else {
+                        h.moveIn(parcels.get(targets[k]));
+                    }
+                }
+                households = left;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        for (int k = households.size() - 1; k >= 0; k--) {
+            homeless.push(households.get(k));
+        }
+        return lost;
+    }
+
+    /**
+     * Selects a parcel for every household, chunk by chunk.
+     * @param firstPartition the random stream partition of the first chunk, the others
+     * following it by household index
+     * @param capacity the free capacities, which are not modified
+     * @return the parcel indexes, -1 for the households without candidate and NO_SHARE
+     * for those whose chunk had no place left for them
+     */
+    private int[] selectAll(ExecutorService executor, final List<Household> households, int firstPartition, final int[] capacity) {
+        final List<Parcel> parcels = manager.getParcelList();
+        final ParcelTable table = manager.getParcelTable();
+        final ParcelScoreCache cache = manager.getScoreCache();
+        final int[] targets = new int[households.size()];
+        int chunkCount = Math.min(households.size(), parallelism * CHUNKS_PER_THREAD);
+        final int chunkSize = (households.size() + chunkCount - 1) / chunkCount;
+        final int dealt = (households.size() + chunkSize - 1) / chunkSize;
+        int stepNumber = manager.getStep().getStepNumber();
+        List<Future<?>> chunks = new ArrayList<Future<?>>();
+        try {
+            for (int from = 0; from < households.size(); from += chunkSize) {
+                final int start = from;
+                final int end = Math.min(households.size(), from + chunkSize);
+                final Random generator = manager.getRandomStreams().stream(RandomStreams.PARALLEL_MOVING_IN, stepNumber, firstPartition + start);
+                chunks.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        int[] candidates = new int[parcels.size()];
+                        double[] scores = new double[candidates.length];
+                        int[] claimed = new int[candidates.length];
+                        for (int k = start; k < end; k++) {
+                            targets[k] = select(households.get(k), table, cache, capacity, start / chunkSize, dealt, claimed, generator, candidates, scores);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> chunk : chunks) {
+                chunk.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Move in was interrupted.", ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Move in failed.", ex.getCause());
+        }
+        return targets;
+    }
+
+    /**
+     * Selects a parcel among those with a place dealt to the chunk, and claims it.
+     * @param chunk the chunk index
+     * @param chunkCount the number of chunks the places are dealt to
+     * @param claimed the places already claimed by the chunk
+     * @return the parcel index, -1 if there is no candidate, or NO_SHARE if there are
+     * only candidates whose places went to other chunks
+     */
+    private int select(Household h, ParcelTable table, ParcelScoreCache cache, int[] capacity, int chunk, int chunkCount, int[] claimed, Random generator, int[] candidates, double[] scores) {
+        double[] classScores = cache.getScores(h);
+        int count = table.filter(candidates, h.getWealth());
+        int size = 0;
+        boolean elsewhere = false;
+        for (int k = 0; k < count; k++) {
+            int i = candidates[k];
+            if (claimed[i] < share(capacity[i], i, chunk, chunkCount)) {
+                candidates[size] = i;
+                scores[size++] = classScores[i];
+            } else if (capacity[i] > 0) {
+                elsewhere = true;
+            }
+        }
+        if (size == 0) {
+            return elsewhere ? NO_SHARE : -1;
+        }
+        int rank = Math.max(0, - (int) (Math.abs(generator.nextGaussian())*manager.getGaussDeviation()*size) + size - 1);
+        int target = candidates[QuickSelect.select(scores, size, rank)];
+        claimed[target]++;
+        return target;
+    }
+
+    /**
+     * Counts the places of a parcel dealt to a chunk, place k going to chunk
+     * (i + k) modulo the chunk count.
+     * @param capacity the free places of the parcel
+     * @param i the parcel index
+     * @return the places of the chunk
+     */
+    static int share(int capacity, int i, int chunk, int chunkCount) {
+        int first = (chunk - i % chunkCount + chunkCount) % chunkCount;
+        return capacity / chunkCount + (first < capacity % chunkCount ? 1 : 0);
+    }
+
+    /**
+     * @return the number of households whose parcel was found full when moving in,
+     * a household being counted once per round
+     */
+    public int getConflicts() {
+        return conflicts;
+    }
+}
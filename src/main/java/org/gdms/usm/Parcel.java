@@ -31,7 +31,6 @@
 package org.gdms.usm;
 
 import com.vividsolutions.jts.geom.Geometry;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import org.gdms.data.DataSourceCreationException;
@@ -45,6 +44,7 @@ import org.gdms.driver.DriverException;
 public final class Parcel {
 
     private final int id;
+    private int index;
     private int buildType;
     private double density;
     private double maxDensity;
@@ -52,11 +52,20 @@ public final class Parcel {
     private final int amenitiesIndex2;
     private final int amenitiesIndex3;
     private final int constructibilityIndex;
+    private final double area;
     private final double inverseArea;
     private final int inseeCode;
     private String zoning;
     private final Geometry theGeom;
-    private Set<Household> householdList;
+    private ResidentList householdList;
+    private long totalWealth;
+    private CohortAgingEngine agingEngine;
+    private HouseholdTable householdTable;
+    private ParcelTable table;
+    private int tableIndex;
+    private double[] nearbyBuildTypeTable;
+    private double upgradePotential;
+    private boolean upgradePotentialValid;
     private NearbyBuildTypeCalculator nbtc;
 
     /**
@@ -78,18 +87,21 @@ public final class Parcel {
     public Parcel(int id, int bT, double d, double mD, int aI1, int aI2, int aI3, int cI, int iC, String z, Geometry geom, NearbyBuildTypeCalculator c) {
 
         this.id = id;
+        this.index = -1;
         this.buildType = bT;
         this.density = d;
         this.maxDensity = mD;
         this.amenitiesIndex1 = aI1;
         this.amenitiesIndex2 = aI2;
         this.amenitiesIndex3 = aI3;
-        this.inverseArea = 1.0 / geom.getArea();
+        this.area = geom.getArea();
+        this.inverseArea = 1.0 / area;
         this.constructibilityIndex = cI;
         this.inseeCode = iC;
         this.zoning = z;
         this.theGeom = geom;
-        this.householdList = new HashSet();
+        this.householdList = new ResidentList();
+        this.totalWealth = 0;
         this.nbtc = c;
 
     }
@@ -111,18 +123,21 @@ public final class Parcel {
     public Parcel(int id, int bT, double mD, int aI1, int aI2, int aI3, int cI, int iC, String z, Geometry geom, NearbyBuildTypeCalculator c) {
 
         this.id = id;
+        this.index = -1;
         this.buildType = bT;
         this.density = 0;
         this.maxDensity = mD;
         this.amenitiesIndex1 = aI1;
         this.amenitiesIndex2 = aI2;
         this.amenitiesIndex3 = aI3;
-        this.inverseArea = 1.0 / geom.getArea();
+        this.area = geom.getArea();
+        this.inverseArea = 1.0 / area;
         this.constructibilityIndex = cI;
         this.inseeCode = iC;
         this.zoning = z;
         this.theGeom = geom;
-        this.householdList = new HashSet();
+        this.householdList = new ResidentList();
+        this.totalWealth = 0;
         this.nbtc = c;
 
     }
@@ -132,8 +147,17 @@ public final class Parcel {
      * @param movingHousehold a household moving in
      */
     public void addHousehold(Household movingHousehold) {
-        householdList.add(movingHousehold);
+        if (householdList.add(movingHousehold)) {
+            if (householdTable != null) {
+                householdTable.add(movingHousehold);
+            }
+            if (agingEngine != null) {
+                agingEngine.attach(movingHousehold);
+            }
+            totalWealth += movingHousehold.getWealth();
+        }
         density += inverseArea;
+        updateTable();
     }
 
     /**
@@ -141,8 +165,68 @@ public final class Parcel {
      * @param movingHousehold a household moving out 
      */
     public void removeHousehold(Household movingHousehold) {
-        householdList.remove(movingHousehold);
+        if (householdList.remove(movingHousehold)) {
+            totalWealth -= movingHousehold.getWealth();
+            if (agingEngine != null) {
+                agingEngine.detach(movingHousehold);
+            }
+        }
         density -= inverseArea;
+        updateTable();
+    }
+
+    /**
+     * Registers the parcel in a row of a parcel table.
+     * @param t the table
+     * @param i the row
+     */
+    void setTable(ParcelTable t, int i) {
+        this.table = t;
+        this.tableIndex = i;
+        updateTable();
+    }
+
+    /**
+     * Copies the changing attributes of the parcel into its table row, if it has one.
+     */
+    private void updateTable() {
+        if (table != null) {
+            table.update(tableIndex, this, totalWealth);
+        }
+    }
+
+    /**
+     * Sets the aging engine the residents age with. Current residents are attached to it.
+     * @param engine the aging engine
+     */
+    void setAgingEngine(CohortAgingEngine engine) {
+        this.agingEngine = engine;
+        for (Household h : householdList) {
+            engine.attach(h);
+        }
+    }
+
+    /**
+     * Sets the household table the residents are registered in. Current residents are registered.
+     * @param t the household table
+     */
+    void setHouseholdTable(HouseholdTable t) {
+        this.householdTable = t;
+        for (Household h : householdList) {
+            t.add(h);
+        }
+    }
+
+    /**
+     * Updates the total wealth of the parcel when the wealth of an inhabitant changes.
+     * @param h the household whose wealth changed
+     * @param oldWealth the wealth of the household before the change
+     */
+    void wealthChanged(Household h, int oldWealth) {
+        if (householdList.contains(h)) {
+            totalWealth += h.getWealth() - oldWealth;
+            updateTable();
+        }
     }
 
     /**
@@ -150,6 +234,7 @@ public final class Parcel {
      * WARNING : lack of break statements is VOLUNTARY.
      */
     public void updateBuildType(double threshold_1, double threshold_2, double threshold_3, double threshold_4) {
+        final int oldBuildType = buildType;
         switch (buildType) {
             case 1:
                 if (density > threshold_1) {
@@ -174,6 +259,11 @@ public final class Parcel {
             default:
                 throw new IllegalArgumentException("Build type is not valid.");
         }
+        if (buildType != oldBuildType) {
+            upgradePotentialValid = false;
+            updateTable();
+            nbtc.buildTypeChanged(this, oldBuildType);
+        }
     }
 
     /**
@@ -186,6 +276,14 @@ public final class Parcel {
         return (incrementedDensity > this.maxDensity);
     }
 
+    /**
+     * @param i a position in the resident list, lower than the local population
+     * @return the household at this position
+     */
+    Household getResident(int i) {
+        return householdList.get(i);
+    }
+
     /**
      * Gets the number of households living in the Plot.
      * @return the population on the Plot
@@ -279,22 +377,40 @@ public final class Parcel {
         return id;
     }
 
+    /**
+     * @return the position of the parcel in the manager parcel list, or -1 if not managed
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @param index the position of the parcel in the manager parcel list
+     */
+    void setIndex(int index) {
+        this.index = index;
+    }
+
     /**
      * Returns the average wealth of the parcel, based on the inhabitants' wealth.
+     * The total wealth is kept up to date when households move in, move out or grow.
      * @return the average wealth
      */
     public int getAverageWealth() {
         if (this.getLocalPopulation() == 0) {
             return 0;
         } else {
-            int total = 0;
-            for (Household h : householdList) {
-                total += h.getWealth();
-            }
-            return total / this.getLocalPopulation();
+            return (int) (totalWealth / this.getLocalPopulation());
         }
     }
         
+    /**
+     * @return the area
+     */
+    public double getArea() {
+        return area;
+    }
+
     /**
      * @return the inverseArea
      */
@@ -313,18 +429,70 @@ public final class Parcel {
         return nbtc.calculate(this);
     }
 
+    /**
+     * Returns the areas of the neighbouring parcels by build type, kept up to date by the
+     * nearby build type calculator when a neighbour build type changes.
+     * @return the table indexed by build type, or null if the neighbours are not set
+     */
+    double[] getNearbyBuildTypeTable() {
+        return nearbyBuildTypeTable;
+    }
+
+    /**
+     * @param table the areas of the neighbouring parcels by build type
+     */
+    void setNearbyBuildTypeTable(double[] table) {
+        this.nearbyBuildTypeTable = table;
+        this.upgradePotentialValid = false;
+    }
+
+    /**
+     * Forgets the cached upgrade potential, after a change of the build type of the
+     * parcel or of one of its neighbours.
+     */
+    void invalidateUpgradePotential() {
+        this.upgradePotentialValid = false;
+    }
+
     /**
      * Returns the total proportion of superior neighboring buildtype.
      * @return 
      */
     public double getUpgradePotential() throws NoSuchTableException, DataSourceCreationException, DriverException {
+        return getUpgradePotential(new double[NearbyBuildTypeCalculator.BUILD_TYPE_SLOTS]);
+    }
+
+    /**
+     * Returns the total proportion of superior neighboring buildtype, using the given
+     * array as working space instead of allocating a map.
+     * When the parcel has its nearby build type table, the value is cached until the
+     * build type of the parcel or of a neighbour changes.
+     * @param buildTypeAreas an array of at least BUILD_TYPE_SLOTS elements, overwritten
+     * @return 
+     */
+    public double getUpgradePotential(double[] buildTypeAreas) {
+        if (nearbyBuildTypeTable == null) {
+            nbtc.upgradePotentialMissed();
+            nbtc.calculate(this, buildTypeAreas);
+            return computeUpgradePotential(buildTypeAreas);
+        }
+        if (upgradePotentialValid) {
+            nbtc.upgradePotentialHit();
+            return upgradePotential;
+        }
+        nbtc.upgradePotentialMissed();
+        upgradePotential = computeUpgradePotential(nearbyBuildTypeTable);
+        upgradePotentialValid = true;
+        return upgradePotential;
+    }
+
+    private double computeUpgradePotential(double[] buildTypeAreas) {
         double totalArea = 0;
         double superiorArea = 0;
-        Map<Integer, Double> nbta = getNearbyBuildTypeAreas();
-        for (int i : nbta.keySet()) {
-            totalArea += nbta.get(i);
+        for (int i = 0; i < NearbyBuildTypeCalculator.BUILD_TYPE_SLOTS; i++) {
+            totalArea += buildTypeAreas[i];
             if (i > buildType) {
-                superiorArea += nbta.get(i);
+                superiorArea += buildTypeAreas[i];
             }
         }
         return superiorArea / totalArea;
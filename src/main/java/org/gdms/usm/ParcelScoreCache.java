@@ -0,0 +1,173 @@
+/**
+ *
+ * Gdms-USM is a library dedicated to multi-agent simulation for modeling urban sprawl.
+ * It is based on the GDMS library. It uses the OrbisGIS renderer to display results.
+ *
+ * This version is developed at French IRSTV Institute and at LIENSs UMR 7266 laboratory
+ * (http://lienss.univ-larochelle.fr/) as part of the VegDUD project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-09-VILL-0007.
+ *
+ * Gdms-USM is distributed under GPL 3 license. It is maintained by the "Atelier SIG" team of
+ * the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Gdms-USM is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Gdms-USM is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Gdms-USM. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://trac.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.usm;
+
+import java.util.List;
+
+/**
+ * Memoizes the GaussParcelComparator scores of every parcel for each household class.
+ * A parcel score only depends on the parcel and on the household age and wealth bands,
+ * so all the households of a class share the same scores. The scores of a class are
+ * computed the first time they are needed, and only the parcels whose build type
+ * changed are computed again afterwards.
+ * @author Thomas Salliou
+ */
+public final class ParcelScoreCache {
+
+    private final Manager manager;
+    private final double[][] scores;
+    private final int[][] orders;
+    private final Household[] representatives;
+
+    /**
+     * Builds an empty ParcelScoreCache.
+     * @param m the manager holding the parcels and the weightings
+     */
+    public ParcelScoreCache(Manager m) {
+        this.manager = m;
+        this.scores = new double[Household.CLASS_COUNT][];
+        this.orders = new int[Household.CLASS_COUNT][];
+        this.representatives = new Household[Household.CLASS_COUNT];
+    }
+
+    /**
+     * Gets the scores of every parcel for the class of the given household, indexed by parcel index.
+     * Business parks get NaN as they are never candidates.
+     * @param h the household
+     * @return the scores array, which must not be modified
+     */
+    public double[] getScores(Household h) {
+        int c = h.getHouseholdClass();
+        List<Parcel> parcels = manager.getParcelList();
+        if (scores[c] == null || scores[c].length != parcels.size()) {
+            //frozen copy of the household, its class can't change
+            representatives[c] = new Household(-1, h.getAge(), h.getMaxWealth());
+            double[] classScores = new double[parcels.size()];
+            ParcelTable table = manager.getParcelTable();
+            if (table.size() == parcels.size()) {
+                scoreTable(table, representatives[c], classScores);
+            } else {
+                GaussParcelComparator gpc = new GaussParcelComparator(representatives[c], manager);
+                for (int i = 0; i < classScores.length; i++) {
+                    classScores[i] = score(gpc, parcels.get(i));
+                }
+            }
+            scores[c] = classScores;
+            orders[c] = null;
+        }
+        return scores[c];
+    }
+
+    /**
+     * Gets the score of a parcel for the class of the given household.
+     * @param h the household
+     * @param p the parcel
+     * @return the score, as given by GaussParcelComparator.getParcelScore
+     */
+    public double getScore(Household h, Parcel p) {
+        return getScores(h)[p.getIndex()];
+    }
+
+    /**
+     * Gets the parcel indexes sorted by ascending score for the class of the given household,
+     * equal scores being kept in parcel list order.
+     * @param h the household
+     * @return the sorted parcel indexes, which must not be modified
+     */
+    public int[] getOrder(Household h) {
+        double[] classScores = getScores(h);
+        int c = h.getHouseholdClass();
+        if (orders[c] == null) {
+            int[] order = new int[classScores.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            QuickSelect.sort(classScores, order, 0, order.length);
+            orders[c] = order;
+        }
+        return orders[c];
+    }
+
+    /**
+     * Tells if the given parcel is the one cached at its index.
+     * @param p the parcel
+     * @return true if the cache can be used for this parcel
+     */
+    public boolean contains(Parcel p) {
+        int i = p.getIndex();
+        return i >= 0 && i < manager.getParcelList().size() && manager.getParcelList().get(i) == p;
+    }
+
+    /**
+     * Computes again the scores of a parcel whose build type changed.
+     * The sorted orders are rebuilt the next time they are needed.
+     * @param p the parcel
+     */
+    public void invalidate(Parcel p) {
+        int i = p.getIndex();
+        for (int c = 0; c < Household.CLASS_COUNT; c++) {
+            if (scores[c] != null && i < scores[c].length) {
+                scores[c][i] = score(new GaussParcelComparator(representatives[c], manager), p);
+                orders[c] = null;
+            }
+        }
+    }
+
+    /**
+     * Forgets every cached score, for instance when the weightings change.
+     */
+    public void clear() {
+        for (int c = 0; c < Household.CLASS_COUNT; c++) {
+            scores[c] = null;
+            orders[c] = null;
+            representatives[c] = null;
+        }
+    }
+
+    /**
+     * Scores every parcel with the columnar kernel, which gives the same values as GaussParcelComparator.
+     */
+    private void scoreTable(ParcelTable table, Household representative, double[] classScores) {
+        int[] ihcByBuildType = new int[NearbyBuildTypeCalculator.BUILD_TYPE_SLOTS];
+        for (int bt = 1; bt <= 5; bt++) {
+            ihcByBuildType[bt] = representative.getIdealHousingCoefficient(bt);
+        }
+        int ageBracket = representative.getAge() < 35 ? 0 : representative.getAge() < 65 ? 1 : 2;
+        table.score(classScores, ageBracket, ihcByBuildType, manager.getAmenitiesWeighting(), manager.getConstructibilityWeighting(), manager.getIdealhousingWeighting());
+    }
+
+    private static double score(GaussParcelComparator gpc, Parcel p) {
+        if (p.getBuildType() == 7) {
+            return Double.NaN;
+        }
+        return gpc.computeParcelScore(p);
+    }
+}
@@ -0,0 +1,347 @@
+/**
+ *
+ * Gdms-USM is a library dedicated to multi-agent simulation for modeling urban sprawl.
+ * It is based on the GDMS library. It uses the OrbisGIS renderer to display results.
+ *
+ * This version is developed at French IRSTV Institute and at LIENSs UMR 7266 laboratory
+ * (http://lienss.univ-larochelle.fr/) as part of the VegDUD project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-09-VILL-0007.
+ *
+ * Gdms-USM is distributed under GPL 3 license. It is maintained by the "Atelier SIG" team of
+ * the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Gdms-USM is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Gdms-USM is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Gdms-USM. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://trac.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.usm;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Columnar copy of the parcel attributes used to score and filter the parcels :
+ * one primitive array per attribute, indexed by parcel index.
+ * Parcels registered in the table write their changes through to it, so that
+ * scoring and filtering are plain loops over arrays.
+ * The residential parcels which are not full are kept in a vacancy index, so that
+ * filtering only visits parcels where a household can still move in. These parcels
+ * are also ordered by average wealth, so that the parcels affordable for a household
+ * are a range of this order. The order is a sorted array of keys rebuilt lazily : the
+ * parcels changed since the last rebuild are listed apart and checked one by one, until
+ * they are numerous enough to make a rebuild worth it.
+ * @author Thomas Salliou
+ */
+public final class ParcelTable {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int RANGE_FRACTION = 16;
+    private int size;
+    private int[] amenitiesIndex1;
+    private int[] amenitiesIndex2;
+    private int[] amenitiesIndex3;
+    private int[] constructibilityIndex;
+    private int[] buildType;
+    private int[] population;
+    private double[] density;
+    private double[] maxDensity;
+    private double[] inverseArea;
+    private long[] totalWealth;
+    private final BitSet vacant;
+    private int vacantCount;
+    private long[] wealthKey;
+    private long[] sortedKeys;
+    private int sortedCount;
+    private final BitSet changed;
+    private int[] changedIndexes;
+    private int changedCount;
+    private ScoringKernel kernel;
+
+    /**
+     * Builds an empty ParcelTable.
+     */
+    public ParcelTable() {
+        this.size = 0;
+        this.vacant = new BitSet();
+        this.vacantCount = 0;
+        this.sortedCount = 0;
+        this.changed = new BitSet();
+        this.changedCount = 0;
+        this.kernel = new ScalarScoringKernel();
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Registers a parcel at the end of the table.
+     * @param p the parcel
+     * @return the index of the parcel in the table
+     */
+    public int add(Parcel p) {
+        if (size == buildType.length) {
+            allocate(size * 2);
+        }
+        int i = size++;
+        amenitiesIndex1[i] = p.getAmenitiesIndex1();
+        amenitiesIndex2[i] = p.getAmenitiesIndex2();
+        amenitiesIndex3[i] = p.getAmenitiesIndex3();
+        constructibilityIndex[i] = p.getConstructibilityIndex();
+        maxDensity[i] = p.getMaxDensity();
+        inverseArea[i] = 1.0 / p.getArea();
+        wealthKey[i] = -1;
+        p.setTable(this, i);
+        return i;
+    }
+
+    /**
+     * Copies the changing attributes of a parcel into its row.
+     * @param i the parcel index
+     * @param p the parcel
+     * @param wealth the total wealth of the residents
+     */
+    void update(int i, Parcel p, long wealth) {
+        buildType[i] = p.getBuildType();
+        population[i] = p.getLocalPopulation();
+        density[i] = p.getDensity();
+        totalWealth[i] = wealth;
+        boolean isVacant = buildType[i] != 7 && !(density[i] + inverseArea[i] > maxDensity[i]);
+        if (isVacant != vacant.get(i)) {
+            vacant.set(i, isVacant);
+            vacantCount += isVacant ? 1 : -1;
+        }
+        long key = isVacant ? ((long) averageWealth(i) << 32) | i : -1;
+        if (key != wealthKey[i]) {
+            wealthKey[i] = key;
+            if (!changed.get(i)) {
+                changed.set(i);
+                changedIndexes[changedCount++] = i;
+            }
+        }
+    }
+
+    /**
+     * Sorts the wealth order again if filter would. Until the table is modified, filter
+     * then only reads it and can be called from several threads.
+     */
+    public void prepareFilter() {
+        if (changedCount > sortedCount / RANGE_FRACTION) {
+            rebuildWealthOrder();
+        }
+    }
+
+    /**
+     * Sorts the keys of the vacant parcels again, and forgets the changed parcels.
+     */
+    private void rebuildWealthOrder() {
+        sortedCount = 0;
+        for (int i = vacant.nextSetBit(0); i >= 0; i = vacant.nextSetBit(i + 1)) {
+            sortedKeys[sortedCount++] = wealthKey[i];
+        }
+        Arrays.sort(sortedKeys, 0, sortedCount);
+        changed.clear();
+        changedCount = 0;
+    }
+
+    private int averageWealth(int i) {
+        return population[i] == 0 ? 0 : (int) (totalWealth[i] / population[i]);
+    }
+
+    /**
+     * @return the number of parcels in the table
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Computes the GaussParcelComparator score of every parcel for a household,
+     * whose ideal housing coefficients are given by build type.
+     * Business parks get NaN.
+     * @param scores the array receiving the scores, at least size long
+     * @param ageBracket 0 under 35 years, 1 under 65 years, 2 otherwise
+     * @param ihcByBuildType the household ideal housing coefficient for each build type
+     * @param amenitiesWeighting the amenities weighting
+     * @param constructibilityWeighting the constructibility weighting
+     * @param idealhousingWeighting the ideal housing weighting
+     */
+    public void score(double[] scores, int ageBracket, int[] ihcByBuildType, double amenitiesWeighting, double constructibilityWeighting, double idealhousingWeighting) {
+        int[] amenities = ageBracket == 0 ? amenitiesIndex1 : ageBracket == 1 ? amenitiesIndex2 : amenitiesIndex3;
+        double[] idealHousingParts = new double[NearbyBuildTypeCalculator.BUILD_TYPE_SLOTS];
+        for (int bt = 0; bt < idealHousingParts.length; bt++) {
+            idealHousingParts[bt] = idealhousingWeighting*(100.0 - (double) ihcByBuildType[bt]);
+        }
+        //NaN propagates through the sum : business parks get NaN.
+        idealHousingParts[7] = Double.NaN;
+        kernel.score(size, amenities, constructibilityIndex, buildType, idealHousingParts, amenitiesWeighting, constructibilityWeighting, scores);
+    }
+
+    /**
+     * @return the kernel computing the scores
+     */
+    public ScoringKernel getScoringKernel() {
+        return kernel;
+    }
+
+    /**
+     * @param kernel the kernel computing the scores
+     */
+    public void setScoringKernel(ScoringKernel kernel) {
+        this.kernel = kernel;
+    }
+
+    /**
+     * Keeps the parcels which are not business parks, not full, and whose average
+     * wealth is low enough for the given household wealth.
+     * Only the vacant parcels cheap enough are visited, then sorted by index. When they
+     * turn out to be a large part of the vacant parcels, scanning them all is cheaper.
+     * @param candidates the array receiving the candidate indexes, in ascending order, at least size long
+     * @param wealth the household wealth
+     * @return the number of candidates
+     */
+    public int filter(int[] candidates, int wealth) {
+        prepareFilter();
+        //Every affordable average wealth is below the bound, the exact test is done on the range.
+        long bound = ((long) Math.ceil(wealth / 0.66) + 1) << 32;
+        int end = Arrays.binarySearch(sortedKeys, 0, sortedCount, bound);
+        if (end < 0) {
+            end = -end - 1;
+        }
+        int limit = vacantCount / RANGE_FRACTION;
+        if (end - changedCount > limit) {
+            return scanFilter(candidates, wealth);
+        }
+        int count = 0;
+        //The keys of the changed parcels may be stale, they are checked from the list.
+        for (int k = 0; k < end; k++) {
+            int i = (int) sortedKeys[k];
+            if (!changed.get(i) && wealth > 0.66*averageWealth(i)) {
+                candidates[count++] = i;
+            }
+        }
+        for (int k = 0; k < changedCount; k++) {
+            int i = changedIndexes[k];
+            if (wealthKey[i] >= 0 && wealthKey[i] < bound && wealth > 0.66*averageWealth(i)) {
+                candidates[count++] = i;
+            }
+        }
+        if (count > limit) {
+            return scanFilter(candidates, wealth);
+        }
+        Arrays.sort(candidates, 0, count);
+        return count;
+    }
+
+    /**
+     * Keeps the same parcels as filter by scanning every vacant parcel.
+     * @param candidates the array receiving the candidate indexes, in ascending order, at least size long
+     * @param wealth the household wealth
+     * @return the number of candidates
+     */
+    public int scanFilter(int[] candidates, int wealth) {
+        int count = 0;
+        for (int i = vacant.nextSetBit(0); i >= 0; i = vacant.nextSetBit(i + 1)) {
+            if (wealth > 0.66*averageWealth(i)) {
+                candidates[count++] = i;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param i a parcel index
+     * @return true if the parcel is not a business park and not full
+     */
+    public boolean isVacant(int i) {
+        return vacant.get(i);
+    }
+
+    /**
+     * @param from the first parcel index to consider
+     * @return the index of the next parcel which is not a business park and not full, or -1
+     */
+    public int nextVacant(int from) {
+        return vacant.nextSetBit(from);
+    }
+
+    /**
+     * @param i a parcel index
+     * @return the average wealth of the residents, 0 if there is none
+     */
+    public int getAverageWealth(int i) {
+        return averageWealth(i);
+    }
+
+    /**
+     * Counts the households which can still move in a parcel. The count may differ by one
+     * from adding them one by one, because of rounding errors.
+     * @param i a parcel index
+     * @return the free capacity, 0 for a business park
+     */
+    public int getFreeCapacity(int i) {
+        double room = (maxDensity[i] - density[i]) / inverseArea[i];
+        if (buildType[i] == 7 || room < 1.0) {
+            return 0;
+        }
+        return (int) Math.min(room, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return the number of parcels which are not business parks and not full
+     */
+    public int getVacancyCount() {
+        return vacantCount;
+    }
+
+    /**
+     * @param i a parcel index
+     * @return the build type of the parcel
+     */
+    public int getBuildType(int i) {
+        return buildType[i];
+    }
+
+    private void allocate(int capacity) {
+        if (buildType == null) {
+            amenitiesIndex1 = new int[capacity];
+            amenitiesIndex2 = new int[capacity];
+            amenitiesIndex3 = new int[capacity];
+            constructibilityIndex = new int[capacity];
+            buildType = new int[capacity];
+            population = new int[capacity];
+            density = new double[capacity];
+            maxDensity = new double[capacity];
+            inverseArea = new double[capacity];
+            totalWealth = new long[capacity];
+            wealthKey = new long[capacity];
+            sortedKeys = new long[capacity];
+            changedIndexes = new int[capacity];
+        } else {
+            amenitiesIndex1 = Arrays.copyOf(amenitiesIndex1, capacity);
+            amenitiesIndex2 = Arrays.copyOf(amenitiesIndex2, capacity);
+            amenitiesIndex3 = Arrays.copyOf(amenitiesIndex3, capacity);
+            constructibilityIndex = Arrays.copyOf(constructibilityIndex, capacity);
+            buildType = Arrays.copyOf(buildType, capacity);
+            population = Arrays.copyOf(population, capacity);
+            density = Arrays.copyOf(density, capacity);
+            maxDensity = Arrays.copyOf(maxDensity, capacity);
+            inverseArea = Arrays.copyOf(inverseArea, capacity);
+            totalWealth = Arrays.copyOf(totalWealth, capacity);
+            wealthKey = Arrays.copyOf(wealthKey, capacity);
+            sortedKeys = Arrays.copyOf(sortedKeys, capacity);
+            changedIndexes = Arrays.copyOf(changedIndexes, capacity);
+        }
+    }
+}
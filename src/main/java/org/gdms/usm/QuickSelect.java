@@ -0,0 +1,193 @@
+/**
+ *
+ * Gdms-USM is a library dedicated to multi-agent simulation for modeling urban sprawl.
+ * It is based on the GDMS library. It uses the OrbisGIS renderer to display results.
+ *
+ * This version is developed at French IRSTV Institute and at LIENSs UMR 7266 laboratory
+ * (http://lienss.univ-larochelle.fr/) as part of the VegDUD project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-09-VILL-0007.
+ *
+ * Gdms-USM is distributed under GPL 3 license. It is maintained by the "Atelier SIG" team of
+ * the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Gdms-USM is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Gdms-USM is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Gdms-USM. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://trac.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.usm;
+
+/**
+ * Selection of the element of a given rank among scored elements, without sorting them.
+ * Elements are compared by exact score, as GaussParcelComparator does, and equal
+ * scores are ordered by position, as a stable sort would do. This is a total order,
+ * so the result is the one of a stable sort of the scores.
+ * Expected cost is linear; after too many bad pivots the remaining range is heap sorted
+ * (introselect), so the worst case stays O(n log n).
+ * @author Thomas Salliou
+ */
+public final class QuickSelect {
+
+    private static final int INSERTION_THRESHOLD = 16;
+
+    private QuickSelect() {
+    }
+
+    /**
+     * Returns the position of the element which would be at index k if the scores were
+     * sorted in ascending order by a stable sort.
+     * @param scores the scores, indexed by position
+     * @param n the number of scores to consider
+     * @param k the wanted rank, between 0 and n - 1
+     * @return the position of the element of rank k
+     */
+    public static int select(double[] scores, int n, int k) {
+        if (k < 0 || k >= n) {
+            throw new IllegalArgumentException("Rank " + k + " is out of [0, " + n + "[.");
+        }
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        return select(scores, order, 0, n, k);
+    }
+
+    /**
+     * Partially reorders order[from..to[ so that order[k] is the element of rank k,
+     * and returns it.
+     * @param scores the scores, indexed by position
+     * @param order positions into the scores array
+     * @param from the first index of the range (inclusive)
+     * @param to the last index of the range (exclusive)
+     * @param k the wanted index, between from and to - 1
+     * @return order[k] once selected
+     */
+    public static int select(double[] scores, int[] order, int from, int to, int k) {
+        int depth = 2 * (32 - Integer.numberOfLeadingZeros(to - from));
+        while (to - from > INSERTION_THRESHOLD) {
+            if (depth-- == 0) {
+                heapSort(scores, order, from, to);
+                return order[k];
+            }
+            int p = partition(scores, order, from, to);
+            if (p == k) {
+                return order[k];
+            } else if (k < p) {
+                to = p;
+            } else {
+                from = p + 1;
+            }
+        }
+        insertionSort(scores, order, from, to);
+        return order[k];
+    }
+
+    /**
+     * Sorts order[from..to[ with the same ordering as select.
+     * @param scores the scores, indexed by position
+     * @param order positions into the scores array
+     * @param from the first index of the range (inclusive)
+     * @param to the last index of the range (exclusive)
+     */
+    public static void sort(double[] scores, int[] order, int from, int to) {
+        heapSort(scores, order, from, to);
+    }
+
+    /**
+     * Compares two positions by score, then by position.
+     */
+    static int compare(double[] scores, int a, int b) {
+        int c = Double.compare(scores[a], scores[b]);
+        if (c != 0) {
+            return c;
+        }
+        return a < b ? -1 : (a > b ? 1 : 0);
+    }
+
+    /**
+     * Lomuto partition around the median of the first, middle and last elements.
+     * @return the final index of the pivot
+     */
+    private static int partition(double[] scores, int[] order, int from, int to) {
+        int last = to - 1;
+        int mid = (from + last) >>> 1;
+        if (compare(scores, order[mid], order[from]) < 0) {
+            swap(order, mid, from);
+        }
+        if (compare(scores, order[last], order[from]) < 0) {
+            swap(order, last, from);
+        }
+        if (compare(scores, order[mid], order[last]) < 0) {
+            swap(order, mid, last);
+        }
+        int pivot = order[last];
+        int store = from;
+        for (int i = from; i < last; i++) {
+            if (compare(scores, order[i], pivot) < 0) {
+                swap(order, i, store);
+                store++;
+            }
+        }
+        swap(order, store, last);
+        return store;
+    }
+
+    private static void insertionSort(double[] scores, int[] order, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            int current = order[i];
+            int j = i - 1;
+            while (j >= from && compare(scores, order[j], current) > 0) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = current;
+        }
+    }
+
+    private static void heapSort(double[] scores, int[] order, int from, int to) {
+        int n = to - from;
+        for (int i = n / 2 - 1; i >= 0; i--) {
+            siftDown(scores, order, from, i, n);
+        }
+        for (int end = n - 1; end > 0; end--) {
+            swap(order, from, from + end);
+            siftDown(scores, order, from, 0, end);
+        }
+    }
+
+    private static void siftDown(double[] scores, int[] order, int base, int i, int n) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= n) {
+                return;
+            }
+            if (child + 1 < n && compare(scores, order[base + child + 1], order[base + child]) > 0) {
+                child++;
+            }
+            if (compare(scores, order[base + child], order[base + i]) <= 0) {
+                return;
+            }
+            swap(order, base + i, base + child);
+            i = child;
+        }
+    }
+
+    private static void swap(int[] order, int i, int j) {
+        int t = order[i];
+        order[i] = order[j];
+        order[j] = t;
+    }
+}
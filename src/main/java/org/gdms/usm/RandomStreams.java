@@ -0,0 +1,118 @@
+/**
+ *
+ * Gdms-USM is a library dedicated to multi-agent simulation for modeling urban sprawl.
+ * It is based on the GDMS library. It uses the OrbisGIS renderer to display results.
+ *
+ * This version is developed at French IRSTV Institute and at LIENSs UMR 7266 laboratory
+ * (http://lienss.univ-larochelle.fr/) as part of the VegDUD project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-09-VILL-0007.
+ *
+ * Gdms-USM is distributed under GPL 3 license. It is maintained by the "Atelier SIG" team of
+ * the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Gdms-USM is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Gdms-USM is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Gdms-USM. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://trac.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.usm;
+
+import java.util.Random;
+
+/**
+ * Hands out the random number generators of a simulation, all derived from one seed.
+ * A stream is identified by a phase, a step number and a partition (a chunk of parcels or
+ * a worker), and its seed is computed by SplitMix64 mixing : two runs with the same seed
+ * draw the same numbers, whatever the number of threads or the order streams are asked in.
+ * @author Thomas Salliou
+ */
+public final class RandomStreams {
+
+    /**
+     * Phase of the creation of the initial households.
+     */
+    public static final int INITIALIZATION = 0;
+    /**
+     * Phase of the creation of immigrants.
+     */
+    public static final int IMMIGRATION = 1;
+    /**
+     * Phase of the moving in of the homeless households.
+     */
+    public static final int MOVING_IN = 2;
+    /**
+     * Phase of the moving in by several threads, whose partitions are chunks of households.
+     */
+    public static final int PARALLEL_MOVING_IN = 3;
+    private static final int PHASE_COUNT = 4;
+    private final long seed;
+    private final Random[] current;
+    private final int[] currentStep;
+
+    /**
+     * @param seed the seed of the simulation
+     */
+    public RandomStreams(long seed) {
+        this.seed = seed;
+        this.current = new Random[PHASE_COUNT];
+        this.currentStep = new int[PHASE_COUNT];
+    }
+
+    /**
+     * @return the seed of the simulation
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Creates the generator of a partition of a phase at a given step.
+     * @param phase the phase
+     * @param step the step number
+     * @param partition the partition
+     * @return a new generator, always the same for the same arguments and seed
+     */
+    public Random stream(int phase, int step, int partition) {
+        long s = mix(seed + 0x9E3779B97F4A7C15L * (phase + 1));
+        s = mix(s + 0x9E3779B97F4A7C15L * (step + 1));
+        s = mix(s + 0x9E3779B97F4A7C15L * (partition + 1));
+        return new Random(s);
+    }
+
+    /**
+     * Gets the sequential generator of a phase at a given step. It is created the first
+     * time it is asked for that step, then the same generator is returned for the step.
+     * @param phase the phase
+     * @param step the step number
+     * @return the generator
+     */
+    public Random get(int phase, int step) {
+        if (current[phase] == null || currentStep[phase] != step) {
+            current[phase] = stream(phase, step, 0);
+            currentStep[phase] = step;
+        }
+        return current[phase];
+    }
+
+    /**
+     * SplitMix64 finalizer.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
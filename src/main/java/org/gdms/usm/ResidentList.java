@@ -0,0 +1,190 @@
+/**
+ *
+ * Gdms-USM is a library dedicated to multi-agent simulation for modeling urban sprawl.
+ * It is based on the GDMS library. It uses the OrbisGIS renderer to display results.
+ *
+ * This version is developed at French IRSTV Institute and at LIENSs UMR 7266 laboratory
+ * (http://lienss.univ-larochelle.fr/) as part of the VegDUD project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-09-VILL-0007.
+ *
+ * Gdms-USM is distributed under GPL 3 license. It is maintained by the "Atelier SIG" team of
+ * the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Gdms-USM is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Gdms-USM is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Gdms-USM. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://trac.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.usm;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The set of households living in a parcel, stored in a growable array.
+ * Each household remembers its slot in the array, so adding, removing and
+ * checking a household are O(1) : a removed household is replaced by the last one.
+ * A household lives in one parcel at a time, so it belongs to a list if and only if
+ * its slot points to it in this list.
+ * Households are iterated in the order they moved in, except for these swaps.
+ * @author Thomas Salliou
+ */
+final class ResidentList extends AbstractSet<Household> {
+
+    private static final int INITIAL_CAPACITY = 4;
+    private Household[] residents;
+    private int size;
+    private int modCount;
+
+    /**
+     * Builds an empty ResidentList.
+     */
+    ResidentList() {
+        this.residents = new Household[INITIAL_CAPACITY];
+        this.size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Household && indexOf((Household) o) >= 0;
+    }
+
+    @Override
+    public boolean add(Household h) {
+        if (indexOf(h) >= 0) {
+            return false;
+        }
+        if (size == residents.length) {
+            residents = Arrays.copyOf(residents, size * 2);
+        }
+        residents[size] = h;
+        h.setResidentSlot(size);
+        size++;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof Household)) {
+            return false;
+        }
+        int i = indexOf((Household) o);
+        if (i < 0) {
+            return false;
+        }
+        removeAt(i);
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            residents[i].setResidentSlot(-1);
+        }
+        Arrays.fill(residents, 0, size, null);
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * @param i a position, lower than size
+     * @return the household at this position
+     */
+    Household get(int i) {
+        return residents[i];
+    }
+
+    @Override
+    public Iterator<Household> iterator() {
+        return new ResidentIterator();
+    }
+
+    /**
+     * Finds a household from its slot, -1 if it is not in this list.
+     */
+    private int indexOf(Household h) {
+        int slot = h.getResidentSlot();
+        if (slot >= 0 && slot < size && residents[slot] == h) {
+            return slot;
+        }
+        return -1;
+    }
+
+    private void removeAt(int i) {
+        residents[i].setResidentSlot(-1);
+        size--;
+        if (i != size) {
+            residents[i] = residents[size];
+            residents[i].setResidentSlot(i);
+        }
+        residents[size] = null;
+        modCount++;
+    }
+
+    class ResidentIterator implements Iterator<Household> {
+
+        private int next;
+        private int last;
+        private int expectedModCount;
+
+        public ResidentIterator() {
+            this.next = 0;
+            this.last = -1;
+            this.expectedModCount = modCount;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public Household next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            return residents[next++];
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            //The last household takes the removed slot : it is the next one to visit.
+            removeAt(last);
+            next = last;
+            last = -1;
+            expectedModCount = modCount;
+        }
+    }
+}
@@ -44,6 +44,15 @@ public final class SchellingDecisionMaker extends IsMovingDecisionMaker {
     public boolean isMoving(Household h) {
         return getSegregationPart(h) > getManager().getSegregationThreshold();
     }
+
+    /**
+     * The segregation part depends on the households which already moved out.
+     * @return false
+     */
+    @Override
+    public boolean hasIndependentDecisions() {
+        return false;
+    }
     
     /**
      * Gets the Segregation percentage according to the Schelling segregation model :
@@ -0,0 +1,54 @@
+/**
+ *
+ * Gdms-USM is a library dedicated to multi-agent simulation for modeling urban sprawl.
+ * It is based on the GDMS library. It uses the OrbisGIS renderer to display results.
+ *
+ * This version is developed at French IRSTV Institute and at LIENSs UMR 7266 laboratory
+ * (http://lienss.univ-larochelle.fr/) as part of the VegDUD project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-09-VILL-0007.
+ *
+ * Gdms-USM is distributed under GPL 3 license. It is maintained by the "Atelier SIG" team of
+ * the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Gdms-USM is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Gdms-USM is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Gdms-USM. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://trac.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.usm;
+
+/**
+ * Computes the parcel scores of a household class from the columns of a ParcelTable.
+ * For each parcel i : amenitiesWeighting * amenities[i] + constructibilityWeighting * constructibility[i]
+ * + idealHousingParts[buildType[i]], the last term being precomputed for each build type.
+ * @author Thomas Salliou
+ */
+public interface ScoringKernel {
+
+    /**
+     * Scores the first size parcels.
+     * @param size the number of parcels
+     * @param amenities the amenities index of the household age bracket
+     * @param constructibility the constructibility index
+     * @param buildType the build type
+     * @param idealHousingParts the weighted ideal housing part of the score for each build type
+     * @param amenitiesWeighting the amenities weighting
+     * @param constructibilityWeighting the constructibility weighting
+     * @param scores the array receiving the scores
+     */
+    void score(int size, int[] amenities, int[] constructibility, int[] buildType, double[] idealHousingParts,
+            double amenitiesWeighting, double constructibilityWeighting, double[] scores);
+}
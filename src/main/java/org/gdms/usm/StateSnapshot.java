@@ -0,0 +1,167 @@
+/**
+ *
+ * Gdms-USM is a library dedicated to multi-agent simulation for modeling urban sprawl.
+ * It is based on the GDMS library. It uses the OrbisGIS renderer to display results.
+ *
+ * This version is developed at French IRSTV Institute and at LIENSs UMR 7266 laboratory
+ * (http://lienss.univ-larochelle.fr/) as part of the VegDUD project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-09-VILL-0007.
+ *
+ * Gdms-USM is distributed under GPL 3 license. It is maintained by the "Atelier SIG" team of
+ * the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Gdms-USM is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Gdms-USM is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Gdms-USM. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://trac.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.usm;
+
+/**
+ * Immutable and compact copy of everything saveState writes for one step.
+ * It is taken by the simulation thread and written later, possibly by another thread.
+ * @author Thomas Salliou
+ */
+public final class StateSnapshot {
+
+    private final int stepNumber;
+    private final int year;
+    private final int population;
+    private final int[] newbornIds;
+    private final int[] newbornMaxWealths;
+    private final int[] plotIds;
+    private final int[] buildTypes;
+    private final int[] averageWealths;
+    private final int[] householdIds;
+    private final int[] householdPlotIds;
+    private final int[] householdAges;
+
+    /**
+     * Builds a snapshot of the given manager state. Empties the newborn list of the manager.
+     * @param m the manager
+     */
+    public StateSnapshot(Manager m) {
+        this.stepNumber = m.getStep().getStepNumber();
+        this.year = m.getStep().getYear();
+
+        int newbornCount = m.getNewbornList().size();
+        newbornIds = new int[newbornCount];
+        newbornMaxWealths = new int[newbornCount];
+        for (int i = 0; i < newbornCount; i++) {
+            Household h = m.getNewbornList().pop();
+            newbornIds[i] = h.getId();
+            newbornMaxWealths[i] = h.getMaxWealth();
+        }
+
+        int parcelCount = m.getParcelList().size();
+        plotIds = new int[parcelCount];
+        buildTypes = new int[parcelCount];
+        averageWealths = new int[parcelCount];
+        int pop = 0;
+        for (int i = 0; i < parcelCount; i++) {
+            Parcel p = m.getParcelList().get(i);
+            plotIds[i] = p.getId();
+            buildTypes[i] = p.getBuildType();
+            averageWealths[i] = p.getAverageWealth();
+            pop += p.getLocalPopulation();
+        }
+        this.population = pop;
+
+        householdIds = new int[pop];
+        householdPlotIds = new int[pop];
+        householdAges = new int[pop];
+        //The households are written parcel by parcel, in the order of their resident lists.
+        int k = 0;
+        for (Parcel p : m.getParcelList()) {
+            for (Household h : p.getHouseholdList()) {
+                householdIds[k] = h.getId();
+                householdPlotIds[k] = p.getId();
+                householdAges[k] = h.getAge();
+                k++;
+            }
+        }
+        if (k != pop) {
+            throw new IllegalStateException("The resident lists hold " + k + " households for a population of " + pop + ".");
+        }
+    }
+
+    /**
+     * @return the stepNumber
+     */
+    public int getStepNumber() {
+        return stepNumber;
+    }
+
+    /**
+     * @return the year
+     */
+    public int getYear() {
+        return year;
+    }
+
+    /**
+     * @return the population
+     */
+    public int getPopulation() {
+        return population;
+    }
+
+    /**
+     * @return the number of households created since the previous snapshot
+     */
+    public int getNewbornCount() {
+        return newbornIds.length;
+    }
+
+    public int getNewbornId(int i) {
+        return newbornIds[i];
+    }
+
+    public int getNewbornMaxWealth(int i) {
+        return newbornMaxWealths[i];
+    }
+
+    /**
+     * @return the number of parcels
+     */
+    public int getParcelCount() {
+        return plotIds.length;
+    }
+
+    public int getPlotId(int i) {
+        return plotIds[i];
+    }
+
+    public int getBuildType(int i) {
+        return buildTypes[i];
+    }
+
+    public int getAverageWealth(int i) {
+        return averageWealths[i];
+    }
+
+    public int getHouseholdId(int i) {
+        return householdIds[i];
+    }
+
+    public int getHouseholdPlotId(int i) {
+        return householdPlotIds[i];
+    }
+
+    public int getHouseholdAge(int i) {
+        return householdAges[i];
+    }
+}
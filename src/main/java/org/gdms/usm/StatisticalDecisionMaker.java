@@ -30,9 +30,6 @@
  */
 package org.gdms.usm;
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
 
 /**
  *
@@ -40,13 +37,38 @@ import java.util.Map;
  */
 public final class StatisticalDecisionMaker extends IsMovingDecisionMaker {
 
-    private Map<Household, LimitedQueue<Double>> dissatisfactionMemories;
+    private DissatisfactionStore dissatisfactionMemories;
 
     /**
-     * Builds a StatisticalDecisionMaker and initializes the dissatisfactionMemories in a HashMap.
+     * Builds a StatisticalDecisionMaker. The dissatisfactionMemories store is created
+     * when the globals give the household memory, or with the first household if they
+     * are never read.
      */
     public StatisticalDecisionMaker() {
-        dissatisfactionMemories = new HashMap<Household, LimitedQueue<Double>>();
+        dissatisfactionMemories = null;
+    }
+
+    /**
+     * Creates the dissatisfactionMemories store with the household memory read from the
+     * globals, keeping the households already added.
+     */
+    @Override
+    public void globalsInitialized() {
+        int memory = getManager().getHouseholdMemory();
+        if (dissatisfactionMemories == null) {
+            dissatisfactionMemories = new DissatisfactionStore(memory);
+        } else if (dissatisfactionMemories.getMemory() != memory) {
+            dissatisfactionMemories = dissatisfactionMemories.copyWithMemory(memory);
+        }
+    }
+
+    /**
+     * A decision only depends on the household, its parcel and its own memory.
+     * @return true
+     */
+    @Override
+    public boolean hasIndependentDecisions() {
+        return true;
     }
 
     @Override
@@ -56,28 +78,44 @@ public final class StatisticalDecisionMaker extends IsMovingDecisionMaker {
         return cumulatedDissatisfaction > getManager().getMovingThreshold();
     }
 
+    /**
+     * Takes the same decision as isMoving, reading the household from the table columns.
+     */
+    @Override
+    public boolean isMoving(HouseholdTable t, int slot) {
+        int age = t.getAge(slot, getManager().getAgingEngine().getYear());
+        Parcel p = t.getHousingPlot(slot);
+        int ihc = IdealHousingTable.get(p.getBuildType(), Household.householdClass(age, t.getMaxWealth(slot)));
+        dissatisfactionMemories.offer(t.getId(slot), getImmediateDissatisfaction(age, p, ihc));
+        return dissatisfactionMemories.getSum(t.getId(slot)) > getManager().getMovingThreshold();
+    }
+
     /**
      * Gets the willingness-to-move coefficient for the specified Household.
      * @return the willingness to move coefficient
      */
     public int getWillMoveCoefficient(Household h) {
+        return getWillMoveCoefficient(h.getAge(), h.getHousingPlot());
+    }
+
+    private int getWillMoveCoefficient(int age, Parcel housingPlot) {
         int wmc;
 
         //is it Nantes or not
-        if (h.getHousingPlot().getInseeCode() == 44109) {
+        if (housingPlot.getInseeCode() == 44109) {
             wmc = 12;
         } else {
             wmc = 6;
         }
 
         //how about the age bracket
-        if (h.getAge() < 25) {
+        if (age < 25) {
             wmc += 36;
-        } else if (h.getAge() < 35) {
+        } else if (age < 35) {
             wmc += 30;
-        } else if (h.getAge() < 50) {
+        } else if (age < 50) {
             wmc += 18;
-        } else if (h.getAge() < 65) {
+        } else if (age < 65) {
             wmc += 8;
         } else {
             wmc += 2;
@@ -91,18 +129,22 @@ public final class StatisticalDecisionMaker extends IsMovingDecisionMaker {
      * @return the immediate dissatisfaction index
      */
     public double getImmediateDissatisfaction(Household h) {
+        return getImmediateDissatisfaction(h.getAge(), h.getHousingPlot(), h.getMovingIHC());
+    }
+
+    private double getImmediateDissatisfaction(int age, Parcel housingPlot, int movingIHC) {
         double amenitiesPart = 0;
-        double willMoveCoeffPart = getWillMoveCoefficient(h) / 48.0;
-        double idealHousingCoeffPart = h.getMovingIHC() / 100.0;
+        double willMoveCoeffPart = getWillMoveCoefficient(age, housingPlot) / 48.0;
+        double idealHousingCoeffPart = movingIHC / 100.0;
         
-        if (h.getAge() < 35) {
-            amenitiesPart = (20.0 - h.getHousingPlot().getAmenitiesIndex1()) / 20.0;
+        if (age < 35) {
+            amenitiesPart = (20.0 - housingPlot.getAmenitiesIndex1()) / 20.0;
         }
-        else if (h.getAge() < 65) {
-            amenitiesPart = (20.0 - h.getHousingPlot().getAmenitiesIndex2()) / 20.0;
+        else if (age < 65) {
+            amenitiesPart = (20.0 - housingPlot.getAmenitiesIndex2()) / 20.0;
         }
         else {
-            amenitiesPart = (20.0 - h.getHousingPlot().getAmenitiesIndex3()) / 20.0;
+            amenitiesPart = (20.0 - housingPlot.getAmenitiesIndex3()) / 20.0;
         }
         
         
@@ -113,7 +155,7 @@ public final class StatisticalDecisionMaker extends IsMovingDecisionMaker {
      * Adds a double to the dissatisfaction limited queue of the specified household.
      */
     public void addToDissatisfactionQueue(Household h, double immdis) {
-        dissatisfactionMemories.get(h).add(immdis);
+        dissatisfactionMemories.offer(h.getId(), immdis);
     }
 
     /**
@@ -121,12 +163,7 @@ public final class StatisticalDecisionMaker extends IsMovingDecisionMaker {
      * @return the cumulated dissatisfaction index.
      */
     public double getCumulatedDissatisfaction(Household h) {
-        Iterator<Double> i = dissatisfactionMemories.get(h).iterator();
-        double cumulatedDissatisfaction = 0;
-        while (i.hasNext()) {
-            cumulatedDissatisfaction += i.next();
-        }
-        return cumulatedDissatisfaction;
+        return dissatisfactionMemories.getSum(h.getId());
     }
 
     /**
@@ -138,11 +175,29 @@ public final class StatisticalDecisionMaker extends IsMovingDecisionMaker {
     }
 
     /**
-     * Returns the dissatisfactionMemory of the specified Household.
+     * Returns a copy of the dissatisfactionMemory of the specified Household,
+     * empty if the household has no memory yet.
      * @return the dissatisfactionMemory 
      */
-    public LimitedQueue<Double> getDissatisfactionMemory(Household h) {
-        return dissatisfactionMemories.get(h);
+    public DoubleLimitedQueue getDissatisfactionMemory(Household h) {
+        if (dissatisfactionMemories == null || !dissatisfactionMemories.contains(h.getId())) {
+            return new DoubleLimitedQueue(getManager() == null ? 0 : getManager().getHouseholdMemory());
+        }
+        DoubleLimitedQueue copy = new DoubleLimitedQueue(dissatisfactionMemories.getMemory());
+        for (int i = 0; i < dissatisfactionMemories.getCount(h.getId()); i++) {
+            copy.offerDouble(dissatisfactionMemories.get(h.getId(), i));
+        }
+        return copy;
+    }
+
+    /**
+     * Forgets the dissatisfactionMemory of the specified Household.
+     * @param h the household to reset
+     */
+    public void clearDissatisfactionMemory(Household h) {
+        if (dissatisfactionMemories != null && dissatisfactionMemories.contains(h.getId())) {
+            dissatisfactionMemories.clear(h.getId());
+        }
     }
 
     /**
@@ -150,21 +205,26 @@ public final class StatisticalDecisionMaker extends IsMovingDecisionMaker {
      * @param h the household to be added
      */
     public void addHousehold(Household h) {
-        dissatisfactionMemories.put(h, new LimitedQueue<Double>(getManager().getHouseholdMemory()));
+        if (dissatisfactionMemories == null) {
+            dissatisfactionMemories = new DissatisfactionStore(getManager().getHouseholdMemory());
+        }
+        dissatisfactionMemories.add(h.getId());
     }
 
     /**
-     * Removes the specified household and its dissatisfactionMemory from the map.
+     * Removes the specified household and its dissatisfactionMemory from the store.
      * @param h the household to be deleted
      */
     public void deleteHousehold(Household h) {
-        dissatisfactionMemories.remove(h);
+        if (dissatisfactionMemories != null) {
+            dissatisfactionMemories.remove(h.getId());
+        }
     }
 
     /**
-     * @return the dissatisfactionMemories
+     * @return the dissatisfactionMemories store, or null if no household was added yet
      */
-    public Map<Household, LimitedQueue<Double>> getDissatisfactionMemories() {
+    public DissatisfactionStore getDissatisfactionMemories() {
         return dissatisfactionMemories;
     }
 }
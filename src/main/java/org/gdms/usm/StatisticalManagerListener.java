@@ -47,7 +47,7 @@ public final class StatisticalManagerListener implements ManagerListener {
     }
     
     /**
-     * Tells the SDM to add the specified household to the map.
+     * Tells the SDM to add the specified household to the store.
      * @param h the added household
      */
     public void householdAdded(Household h) {
@@ -55,7 +55,7 @@ public final class StatisticalManagerListener implements ManagerListener {
     }
     
     /**
-     * Tells the SDM to delete the specified household from the map.
+     * Tells the SDM to delete the specified household from the store.
      * @param h the household to delete
      */
     public void householdDeleted(Household h) {
@@ -63,10 +63,10 @@ public final class StatisticalManagerListener implements ManagerListener {
     }
     
     /**
-     * Tells the SDM to clear the LimitedQueue of the specified household in the map.
+     * Tells the SDM to clear the dissatisfaction memory of the specified household.
      * @param h the household to reset
      */
     public void householdMoved(Household h) {
-        sdm.getDissatisfactionMemory(h).clear();
+        sdm.clearDissatisfactionMemory(h);
     }
 }
@@ -93,7 +93,9 @@ public final class Step {
 
     /**
      * Initializes everything needed for the simulation : input data reading,
-     * output database creation and neighbours calculation.
+     * output database creation and neighbours calculation. Unless the calculator was given
+     * its own graph builder, the neighbours are computed once and then read from the
+     * neighbour graph cache of the manager.
      * @throws DataSourceCreationException
      * @throws DriverException
      * @throws NoSuchTableException
@@ -105,13 +107,21 @@ public final class Step {
         theManager.initializeGlobals();
         theManager.initializeSimulation();
         theManager.initializeOutputDatabase();
-        theManager.getNbtc().setNeighbours();
+        NearbyBuildTypeCalculator nbtc = theManager.getNbtc();
+        if (nbtc.getGraphBuilder() == null) {
+            NeighbourGraphBuilder builder = new NeighbourGraphBuilder();
+            builder.setCache(theManager.getNeighbourGraphCache());
+            nbtc.setGraphBuilder(builder);
+        }
+        nbtc.setNeighbours();
     }
 
     /**
      * Calls every method needed for a step of the simulation : first everybody grows,
      * then the annoyed households move out, then the immigrants come, then all the
      * homeless households move in and finally we save the new state in the output database.
+     * The output tables are only complete once Manager.closeOutputDatabase has run, which
+     * wholeSimulation does even if a step fails.
      * @throws NoSuchTableException
      * @throws DataSourceCreationException
      * @throws DriverException
@@ -127,7 +137,7 @@ public final class Step {
         }
         theManager.everybodyMovesIn();
         theManager.updateBuildType();        
-        theManager.saveState();
+        theManager.appendState();
     }
     
     /**
@@ -143,8 +153,12 @@ public final class Step {
     public void wholeSimulation() throws NoSuchTableException, DataSourceCreationException, DriverException, NonEditableDataSourceException, IOException, IndexException {
         initialize();
         notifyInitializationDone();
-        for (int i = 0; i < theManager.getNumberOfTurns(); i++) {
-            wholeStep();
+        try {
+            for (int i = 0; i < theManager.getNumberOfTurns(); i++) {
+                wholeStep();
+            }
+        } finally {
+            theManager.closeOutputDatabase();
         }
         notifySimulationDone();
     }
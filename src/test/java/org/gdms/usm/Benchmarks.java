@@ -0,0 +1,315 @@
+/**
+ *
+ * Gdms-USM is a library dedicated to multi-agent simulation for modeling urban sprawl.
+ * It is based on the GDMS library. It uses the OrbisGIS renderer to display results.
+ *
+ * This version is developed at French IRSTV Institute and at LIENSs UMR 7266 laboratory
+ * (http://lienss.univ-larochelle.fr/) as part of the VegDUD project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-09-VILL-0007.
+ *
+ * Gdms-USM is distributed under GPL 3 license. It is maintained by the "Atelier SIG" team of
+ * the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Gdms-USM is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Gdms-USM is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Gdms-USM. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://trac.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.usm;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Performance measurements, kept out of the unit tests whose run times they would
+ * depend on. Run with the test classpath, giving the names of the benchmarks to run,
+ * or none to run them all.
+ * @author Thomas Salliou
+ */
+public final class Benchmarks {
+
+    private static final double AMENITIES_WEIGHTING = 0.4;
+    private static final double CONSTRUCTIBILITY_WEIGHTING = 0.25;
+    private static final double IDEALHOUSING_WEIGHTING = 0.35;
+
+    private Benchmarks() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String> names = new ArrayList<String>();
+        for (String arg : args) {
+            names.add(arg);
+        }
+        if (names.isEmpty() || names.contains("filter")) {
+            filter();
+        }
+        if (names.isEmpty() || names.contains("scoring")) {
+            scoring();
+        }
+        if (names.isEmpty() || names.contains("kernels")) {
+            kernels();
+        }
+        if (names.isEmpty() || names.contains("graph")) {
+            graph();
+        }
+        if (names.isEmpty() || names.contains("cache")) {
+            cache();
+        }
+        if (names.isEmpty() || names.contains("residents")) {
+            residents();
+        }
+    }
+
+    private static List<Parcel> buildParcels(ParcelTable table, int count) {
+        GeometryFactory gf = new GeometryFactory();
+        BufferBuildTypeCalculator bbtc = new BufferBuildTypeCalculator();
+        Random r = new Random(17);
+        List<Parcel> parcels = new ArrayList<Parcel>();
+        int id = 0;
+        for (int i = 0; i < count; i++) {
+            int buildType = i % 11 == 0 ? 7 : 1 + r.nextInt(5);
+            Parcel p = new Parcel(i, buildType, 0.0004 + r.nextDouble() * 0.001, r.nextInt(21), r.nextInt(21), r.nextInt(21), r.nextInt(21), 44109, "AB",
+                    gf.createPoint(new Coordinate(i * 100, 0)).buffer(20 + r.nextInt(30), 2), bbtc);
+            table.add(p);
+            for (int k = r.nextInt(4); k > 0; k--) {
+                new Household(id++, 20 + r.nextInt(60), 10000 + r.nextInt(90000)).moveIn(p);
+            }
+            parcels.add(p);
+        }
+        return parcels;
+    }
+
+    /**
+     * Compares the wealth range filter of the parcel table with the vacancy scan.
+     */
+    private static void filter() {
+        ParcelTable table = new ParcelTable();
+        List<Parcel> parcels = buildParcels(table, 100000);
+        //Most parcels are left with rich residents only, as in a dense city.
+        for (int i = 0; i < parcels.size(); i++) {
+            Parcel p = parcels.get(i);
+            if (p.getBuildType() != 7 && i % 20 != 0) {
+                new Household(300000 + i, 60, 200000).moveIn(p);
+            }
+        }
+        int[] candidates = new int[table.size()];
+        int[] wealths = {8000, 30000, 100000, 300000};
+        //Warm up so that both filters are compiled before timing.
+        for (int run = 0; run < 500; run++) {
+            table.filter(candidates, wealths[run % wealths.length]);
+            table.scanFilter(candidates, wealths[run % wealths.length]);
+        }
+        for (int wealth : wealths) {
+            long rangeTime = Long.MAX_VALUE;
+            long scanTime = Long.MAX_VALUE;
+            int count = 0;
+            for (int run = 0; run < 50; run++) {
+                long start = System.nanoTime();
+                count = table.filter(candidates, wealth);
+                rangeTime = Math.min(rangeTime, System.nanoTime() - start);
+                start = System.nanoTime();
+                table.scanFilter(candidates, wealth);
+                scanTime = Math.min(scanTime, System.nanoTime() - start);
+            }
+            System.out.println("Filtering " + table.size() + " parcels for wealth " + wealth + " : " + count + " candidates, wealth range " + rangeTime / 1000 + " us, vacancy scan " + scanTime / 1000 + " us");
+        }
+    }
+
+    /**
+     * Compares scoring the parcel objects with scoring the parcel table.
+     */
+    private static void scoring() {
+        ParcelTable table = new ParcelTable();
+        List<Parcel> parcels = buildParcels(table, 100000);
+        double[] scores = new double[table.size()];
+        Household h = new Household(-1, 40, 30000);
+        int[] ihcByBuildType = new int[NearbyBuildTypeCalculator.BUILD_TYPE_SLOTS];
+        for (int bt = 1; bt <= 5; bt++) {
+            ihcByBuildType[bt] = h.getIdealHousingCoefficient(bt);
+        }
+        double checksum = 0;
+        long objectTime = Long.MAX_VALUE;
+        long tableTime = Long.MAX_VALUE;
+        for (int run = 0; run < 10; run++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < parcels.size(); i++) {
+                Parcel p = parcels.get(i);
+                scores[i] = p.getBuildType() == 7 ? Double.NaN : AMENITIES_WEIGHTING*p.getAmenitiesIndex2()
+                        + CONSTRUCTIBILITY_WEIGHTING*p.getConstructibilityIndex()
+                        + IDEALHOUSING_WEIGHTING*(100.0 - h.getIdealHousingCoefficient(p));
+            }
+            objectTime = Math.min(objectTime, System.nanoTime() - start);
+            checksum += scores[1];
+            
+            start = System.nanoTime();
+            table.score(scores, 1, ihcByBuildType, AMENITIES_WEIGHTING, CONSTRUCTIBILITY_WEIGHTING, IDEALHOUSING_WEIGHTING);
+            tableTime = Math.min(tableTime, System.nanoTime() - start);
+            checksum += scores[1];
+        }
+        System.out.println("Scoring " + parcels.size() + " parcels : objects " + objectTime / 1000 + " us, parcel table " + tableTime / 1000 + " us (checksum " + checksum + ")");
+    }
+
+    /**
+     * Compares the scoring kernels from 10 000 to 1 000 000 parcels.
+     */
+    private static void kernels() {
+        ScoringKernel[] kernels = {new ScalarScoringKernel(), new UnrolledScoringKernel()};
+        Random r = new Random(19);
+        int[] amenities = new int[1000000];
+        int[] constructibility = new int[amenities.length];
+        int[] buildType = new int[amenities.length];
+        for (int i = 0; i < amenities.length; i++) {
+            amenities[i] = r.nextInt(101);
+            constructibility[i] = r.nextInt(101);
+            buildType[i] = 1 + r.nextInt(7);
+        }
+        double[] idealHousingParts = new double[NearbyBuildTypeCalculator.BUILD_TYPE_SLOTS];
+        for (int bt = 0; bt < idealHousingParts.length; bt++) {
+            idealHousingParts[bt] = IDEALHOUSING_WEIGHTING*(100.0 - (double) r.nextInt(101));
+        }
+        idealHousingParts[7] = Double.NaN;
+        double[] scores = new double[amenities.length];
+        //Warm up so that both kernels are compiled before timing.
+        for (int run = 0; run < 200; run++) {
+            for (ScoringKernel kernel : kernels) {
+                kernel.score(10000, amenities, constructibility, buildType, idealHousingParts, AMENITIES_WEIGHTING, CONSTRUCTIBILITY_WEIGHTING, scores);
+            }
+        }
+        for (int size = 10000; size <= amenities.length; size *= 10) {
+            long[] times = new long[kernels.length];
+            for (int run = 0; run < 20; run++) {
+                for (int k = 0; k < kernels.length; k++) {
+                    long start = System.nanoTime();
+                    kernels[k].score(size, amenities, constructibility, buildType, idealHousingParts, AMENITIES_WEIGHTING, CONSTRUCTIBILITY_WEIGHTING, scores);
+                    long time = System.nanoTime() - start;
+                    times[k] = run == 0 ? time : Math.min(times[k], time);
+                }
+            }
+            System.out.println("Scoring " + size + " parcels : scalar " + times[0] / 1000 + " us, unrolled " + times[1] / 1000 + " us");
+        }
+    }
+
+    private static List<Parcel> buildGrid(int side) {
+        GeometryFactory gf = new GeometryFactory();
+        BufferBuildTypeCalculator bbtc = new BufferBuildTypeCalculator();
+        List<Parcel> parcels = new ArrayList<Parcel>();
+        for (int i = 0; i < side * side; i++) {
+            double x = (i % side) * 10 + (i * 7 % 5);
+            double y = (i / side) * 10 + (i * 3 % 4);
+            parcels.add(new Parcel(i,1,100,20,20,20,10,50,44109,"AB",gf.createPoint(new Coordinate(x, y)).buffer(4.5, 8), bbtc));
+        }
+        return parcels;
+    }
+
+    /**
+     * Measures the neighbour graph build speed-up with the number of threads, then the distance search.
+     */
+    private static void graph() {
+        List<Parcel> parcels = buildGrid(120);
+        double bufferSize = 3;
+        long sequentialTime = 0;
+        int maxParallelism = Math.max(4, Runtime.getRuntime().availableProcessors());
+        for (int parallelism = 1; parallelism <= maxParallelism; parallelism *= 2) {
+            long start = System.nanoTime();
+            new NeighbourGraphBuilder(parallelism).build(parcels, bufferSize);
+            long time = System.nanoTime() - start;
+            if (parallelism == 1) {
+                sequentialTime = time;
+            }
+            System.out.println("Neighbour graph, " + parallelism + " thread(s) : " + time / 1000000 + " ms, speed-up " + (double) sequentialTime / time);
+        }
+        NeighbourGraphBuilder builder = new NeighbourGraphBuilder(maxParallelism);
+        builder.setDistanceSearch(true);
+        long start = System.nanoTime();
+        builder.build(parcels, bufferSize);
+        System.out.println("Distance search, " + maxParallelism + " thread(s) : " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    /**
+     * Compares building the neighbour graph with loading it from the cache.
+     */
+    private static void cache() throws IOException {
+        List<Parcel> parcels = buildGrid(120);
+        File dataFile = File.createTempFile("usm-data", ".gdms");
+        File cacheFile = File.createTempFile("usm-graph", ".bin");
+        try {
+            FileOutputStream out = new FileOutputStream(dataFile);
+            try {
+                out.write(new byte[]{1, 2, 3, 4});
+            } finally {
+                out.close();
+            }
+            NeighbourGraphCache cache = new NeighbourGraphCache(cacheFile, dataFile);
+            long start = System.nanoTime();
+            Parcel[][] graph = new NeighbourGraphBuilder(1).build(parcels, 3);
+            long buildTime = System.nanoTime() - start;
+            cache.store(graph, parcels, 3, false);
+            start = System.nanoTime();
+            cache.load(parcels, 3, false);
+            long loadTime = System.nanoTime() - start;
+            System.out.println("Neighbour graph of " + parcels.size() + " parcels : built in " + buildTime / 1000000 + " ms, loaded in " + loadTime / 1000000 + " ms");
+        } finally {
+            dataFile.delete();
+            cacheFile.delete();
+        }
+    }
+
+    private static double getMemoryUsage(Runtime r) {
+        r.gc();
+        r.gc();
+        return (r.totalMemory() - r.freeMemory())/(1024.0*1024.0);
+    }
+
+    private static List<Set<Household>> fillResidents(List<Household> population, int perParcel, boolean residentLists) {
+        List<Set<Household>> parcels = new ArrayList<Set<Household>>(population.size() / perParcel);
+        for (int i = 0; i < population.size(); i += perParcel) {
+            Set<Household> residents = residentLists ? new ResidentList() : new HashSet<Household>();
+            for (int j = i; j < i + perParcel; j++) {
+                residents.add(population.get(j));
+            }
+            parcels.add(residents);
+        }
+        return parcels;
+    }
+
+    /**
+     * Compares the memory held by the resident containers of 1 000 000 households.
+     */
+    private static void residents() {
+        Runtime r = Runtime.getRuntime();
+        int households = 1000000;
+        List<Household> population = new ArrayList<Household>(households);
+        for (int i = 0; i < households; i++) {
+            population.add(new Household(i,25,48700));
+        }
+        double before = getMemoryUsage(r);
+        List<Set<Household>> hashSets = fillResidents(population, 4, false);
+        double hashSetMemory = getMemoryUsage(r) - before;
+        hashSets.clear();
+        before = getMemoryUsage(r);
+        List<Set<Household>> residentLists = fillResidents(population, 4, true);
+        double residentListMemory = getMemoryUsage(r) - before;
+        System.out.println("Resident containers for " + households + " households : HashSet " + hashSetMemory + " MB, ResidentList " + residentListMemory + " MB (" + residentLists.size() + " parcels)");
+    }
+}
@@ -32,7 +32,10 @@ package org.gdms.usm;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import junit.framework.TestCase;
 import org.gdms.data.DataSourceCreationException;
 import org.gdms.data.DataSourceFactory;
@@ -107,4 +110,80 @@ public class BufferBuildTypeCalculatorTest extends TestCase {
         assertTrue(nbta.containsKey(5));
         assertTrue(Math.abs(nbta.get(5) - 40909.88763335168) < 0.000001);
     }
+    
+    public void testCalculateArray() throws DataSourceCreationException, DriverException, NoSuchTableException, NonEditableDataSourceException, IOException, IndexException {
+        Step s = new Step(2000, dataPathForTests, globalsPathForTests, outputPathForTests, bbtc, sdm, gps, dsf);
+        Manager m = new Manager(s, dataPathForTests, globalsPathForTests, outputPathForTests, bbtc, sdm, gps, dsf);
+        bbtc.setManager(m);
+        m.initializeGlobals();
+        m.initializeSimulation();
+        m.initializeOutputDatabase();
+        m.getNbtc().setNeighbours();
+        
+        double[] areas = new double[NearbyBuildTypeCalculator.BUILD_TYPE_SLOTS];
+        for (Parcel p : m.getParcelList()) {
+            Map<Integer,Double> nbta = p.getNearbyBuildTypeAreas();
+            bbtc.calculate(p, areas);
+            for (int i = 0; i < areas.length; i++) {
+                if (nbta.containsKey(i)) {
+                    assertTrue(nbta.get(i) == areas[i]);
+                } else {
+                    assertTrue(areas[i] == 0);
+                }
+            }
+        }
+        assertTrue(Math.abs(m.getParcelList().get(412).getUpgradePotential(areas) - 0.9658773693035715) < 0.000001);
+    }
+    
+    public void testTablesFollowBuildTypeChanges() throws DataSourceCreationException, DriverException, NoSuchTableException, NonEditableDataSourceException, IOException, IndexException {
+        Step s = new Step(2000, dataPathForTests, globalsPathForTests, outputPathForTests, bbtc, sdm, gps, dsf);
+        Manager m = new Manager(s, dataPathForTests, globalsPathForTests, outputPathForTests, bbtc, sdm, gps, dsf);
+        bbtc.setManager(m);
+        m.initializeGlobals();
+        m.initializeSimulation();
+        m.initializeOutputDatabase();
+        m.getNbtc().setNeighbours();
+        
+        for (int step = 0; step < 3; step++) {
+            for (int i = step; i < m.getParcelList().size(); i += 7) {
+                Parcel p = m.getParcelList().get(i);
+                if (p.getBuildType() >= 1 && p.getBuildType() <= 5) {
+                    p.updateBuildType(0, 0, 0, 0);
+                }
+            }
+        }
+        
+        double[] areas = new double[NearbyBuildTypeCalculator.BUILD_TYPE_SLOTS];
+        for (Parcel p : m.getParcelList()) {
+            double[] expected = new double[NearbyBuildTypeCalculator.BUILD_TYPE_SLOTS];
+            for (Parcel n : bbtc.getNeighbours(p)) {
+                expected[n.getBuildType()] += n.getArea();
+            }
+            bbtc.calculate(p, areas);
+            for (int i = 0; i < areas.length; i++) {
+                assertTrue(Math.abs(expected[i] - areas[i]) < 0.000001);
+            }
+        }
+    }
+    
+    public void testParallelNeighboursMatchSpatialIndex() throws DataSourceCreationException, DriverException, NoSuchTableException, NonEditableDataSourceException, IOException, IndexException {
+        Step s = new Step(2000, dataPathForTests, globalsPathForTests, outputPathForTests, bbtc, sdm, gps, dsf);
+        Manager m = new Manager(s, dataPathForTests, globalsPathForTests, outputPathForTests, bbtc, sdm, gps, dsf);
+        bbtc.setManager(m);
+        m.initializeGlobals();
+        m.initializeSimulation();
+        m.initializeOutputDatabase();
+        m.getNbtc().setNeighbours();
+        
+        BufferBuildTypeCalculator parallel = new BufferBuildTypeCalculator();
+        parallel.setManager(m);
+        parallel.setGraphBuilder(new NeighbourGraphBuilder(4));
+        parallel.setNeighbours();
+        
+        for (Parcel p : m.getParcelList()) {
+            Set<Parcel> expected = new HashSet<Parcel>(Arrays.asList(bbtc.getNeighbours(p)));
+            Set<Parcel> actual = new HashSet<Parcel>(Arrays.asList(parallel.getNeighbours(p)));
+            assertEquals(expected, actual);
+        }
+    }
 }
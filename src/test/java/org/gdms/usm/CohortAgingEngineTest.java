@@ -0,0 +1,148 @@
+/**
+ *
+ * Gdms-USM is a library dedicated to multi-agent simulation for modeling urban sprawl.
+ * It is based on the GDMS library. It uses the OrbisGIS renderer to display results.
+ *
+ * This version is developed at French IRSTV Institute and at LIENSs UMR 7266 laboratory
+ * (http://lienss.univ-larochelle.fr/) as part of the VegDUD project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-09-VILL-0007.
+ *
+ * Gdms-USM is distributed under GPL 3 license. It is maintained by the "Atelier SIG" team of
+ * the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Gdms-USM is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Gdms-USM is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Gdms-USM. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://trac.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.usm;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKTReader;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Thomas Salliou
+ */
+public class CohortAgingEngineTest extends TestCase {
+    
+    public CohortAgingEngineTest(String testName) {
+        super(testName);
+    }
+    
+    private Parcel defaultParcelBuilder(CohortAgingEngine engine) throws ParseException {
+        WKTReader wktr = new WKTReader();
+        Geometry geometry = wktr.read("POLYGON((0 0, 0 10, 10 10, 10 0, 0 0))");
+        Parcel p = new Parcel(8,2,2,20,20,20,10,50,44109,"AB",geometry, new BufferBuildTypeCalculator());
+        p.setAgingEngine(engine);
+        return p;
+    }
+    
+    public void testAging() throws ParseException {
+        CohortAgingEngine engine = new CohortAgingEngine();
+        Parcel p = defaultParcelBuilder(engine);
+        Household young = new Household(1, 40, 48000);
+        Household old = new Household(2, 59, 60000);
+        young.moveIn(p);
+        old.moveIn(p);
+        assertTrue(engine.size() == 2);
+        
+        engine.advance();
+        assertTrue(young.getAge() == 41);
+        assertTrue(young.getWealth() == 48000 * 41 / 60);
+        assertTrue(old.getAge() == 60);
+        assertTrue(old.getWealth() == 60000);
+        assertTrue(p.getAverageWealth() == (48000 * 41 / 60 + 60000) / 2);
+        
+        List<Household> sixty = engine.getCohort(60);
+        assertTrue(sixty.size() == 1 && sixty.get(0) == old);
+        assertTrue(engine.getCohortsAtLeast(41).size() == 2);
+        assertTrue(engine.getCohortsAtLeast(42).size() == 1);
+        
+        //A household which moves out keeps its age and grows by itself.
+        young.moveOut();
+        engine.advance();
+        assertTrue(young.getAge() == 41);
+        young.grow();
+        assertTrue(young.getAge() == 42);
+        assertTrue(old.getAge() == 61);
+        assertTrue(engine.size() == 1);
+        
+        //Growing has no effect on an attached household.
+        old.grow();
+        assertTrue(old.getAge() == 61);
+    }
+    
+    public void testLeavingACohort() throws ParseException {
+        CohortAgingEngine engine = new CohortAgingEngine();
+        Parcel p = defaultParcelBuilder(engine);
+        Household[] twins = new Household[5];
+        for (int i = 0; i < twins.length; i++) {
+            twins[i] = new Household(i, 30, 30000);
+            twins[i].moveIn(p);
+        }
+        //The last household takes the slot of the one leaving the middle of the cohort.
+        twins[1].moveOut();
+        twins[3].moveOut();
+        List<Household> cohort = engine.getCohort(30);
+        assertEquals(3, cohort.size());
+        assertTrue(cohort.contains(twins[0]) && cohort.contains(twins[2]) && cohort.contains(twins[4]));
+        assertEquals(3, engine.size());
+        
+        //A household keeps its age across moves, its frozen age and birth year being apart.
+        engine.advance();
+        twins[1].grow();
+        twins[1].moveIn(p);
+        engine.advance();
+        twins[1].moveOut();
+        twins[1].grow();
+        assertEquals(33, twins[1].getAge());
+        assertEquals(32, twins[0].getAge());
+        twins[1].moveIn(p);
+        assertEquals(3, engine.getCohort(32).size());
+        assertEquals(1, engine.getCohort(33).size());
+        for (Household h : engine.getCohortsAtLeast(0)) {
+            h.moveOut();
+        }
+        assertEquals(0, engine.size());
+    }
+    
+    public void testAverageWealthOverYears() throws ParseException {
+        CohortAgingEngine engine = new CohortAgingEngine();
+        Parcel p = defaultParcelBuilder(engine);
+        ParcelTable table = new ParcelTable();
+        table.add(p);
+        for (int i = 0; i < 30; i++) {
+            new Household(i, 20 + 2 * i, 10000 + 1733 * i).moveIn(p);
+        }
+        for (int year = 0; year < 25; year++) {
+            engine.advance();
+            long total = 0;
+            for (Household h : p.getHouseholdList()) {
+                total += h.getWealth();
+            }
+            assertTrue(p.getAverageWealth() == (int) (total / p.getLocalPopulation()));
+            //The parcel table follows the aging without being asked to.
+            assertTrue(table.getAverageWealth(0) == p.getAverageWealth());
+            for (Household h : engine.getCohortsAtLeast(80)) {
+                h.moveOut();
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ *
+ * Gdms-USM is a library dedicated to multi-agent simulation for modeling urban sprawl.
+ * It is based on the GDMS library. It uses the OrbisGIS renderer to display results.
+ *
+ * This version is developed at French IRSTV Institute and at LIENSs UMR 7266 laboratory
+ * (http://lienss.univ-larochelle.fr/) as part of the VegDUD project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-09-VILL-0007.
+ *
+ * Gdms-USM is distributed under GPL 3 license. It is maintained by the "Atelier SIG" team of
+ * the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Gdms-USM is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Gdms-USM is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Gdms-USM. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://trac.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.usm;
+
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Thomas Salliou
+ */
+public class DissatisfactionStoreTest extends TestCase {
+    
+    public DissatisfactionStoreTest(String testName) {
+        super(testName);
+    }
+    
+    public void testOffer() {
+        DissatisfactionStore store = new DissatisfactionStore(3);
+        store.add(7);
+        store.offer(7, 1.5478);
+        store.offer(7, 2.14752);
+        store.offer(7, 0.4971);
+        store.offer(7, 4.12765);
+        
+        assertTrue(store.getCount(7) == 3);
+        assertTrue(store.get(7, 0) == 2.14752);
+        assertTrue(store.get(7, 1) == 0.4971);
+        assertTrue(store.get(7, 2) == 4.12765);
+        assertTrue(Math.abs(store.getSum(7) - 6.77227) < 0.000001);
+        
+        store.clear(7);
+        assertTrue(store.getCount(7) == 0);
+        assertTrue(store.getSum(7) == 0);
+    }
+    
+    public void testRemoveReusesSlots() {
+        DissatisfactionStore store = new DissatisfactionStore(2);
+        store.add(1);
+        store.add(2);
+        store.offer(1, 3.0);
+        store.remove(1);
+        assertFalse(store.contains(1));
+        assertTrue(store.size() == 1);
+        
+        store.add(3);
+        assertTrue(store.contains(3));
+        assertTrue(store.getCount(3) == 0);
+        assertTrue(store.getSum(3) == 0);
+        try {
+            store.getSum(1);
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+    
+    public void testCopyWithMemory() {
+        DissatisfactionStore store = new DissatisfactionStore(0);
+        store.add(4);
+        store.add(9);
+        DissatisfactionStore copy = store.copyWithMemory(3);
+        assertTrue(copy.getMemory() == 3);
+        assertTrue(copy.size() == 2);
+        copy.offer(4, 1.0);
+        copy.offer(4, 2.0);
+        copy.offer(4, 3.0);
+        copy.offer(4, 4.0);
+        
+        DissatisfactionStore shorter = copy.copyWithMemory(2);
+        assertTrue(shorter.contains(9));
+        assertTrue(shorter.getCount(4) == 2);
+        assertTrue(shorter.get(4, 0) == 3.0);
+        assertTrue(shorter.get(4, 1) == 4.0);
+        assertTrue(shorter.getSum(4) == 7.0);
+    }
+    
+    public void testGrowth() {
+        DissatisfactionStore store = new DissatisfactionStore(4);
+        for (int id = 0; id < 5000; id += 2) {
+            store.add(id);
+            store.offer(id, id);
+            store.offer(id, 1);
+        }
+        store.add(100000);
+        store.offer(100000, 2.5);
+        
+        assertTrue(store.size() == 2501);
+        for (int id = 0; id < 5000; id++) {
+            if (id % 2 == 0) {
+                assertTrue(store.getSum(id) == id + 1);
+            } else {
+                assertFalse(store.contains(id));
+            }
+        }
+        assertTrue(store.getSum(100000) == 2.5);
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ *
+ * Gdms-USM is a library dedicated to multi-agent simulation for modeling urban sprawl.
+ * It is based on the GDMS library. It uses the OrbisGIS renderer to display results.
+ *
+ * This version is developed at French IRSTV Institute and at LIENSs UMR 7266 laboratory
+ * (http://lienss.univ-larochelle.fr/) as part of the VegDUD project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-09-VILL-0007.
+ *
+ * Gdms-USM is distributed under GPL 3 license. It is maintained by the "Atelier SIG" team of
+ * the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Gdms-USM is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Gdms-USM is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Gdms-USM. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://trac.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.usm;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Thomas Salliou
+ */
+public class DoubleLimitedQueueTest extends TestCase {
+    
+    public DoubleLimitedQueueTest(String testName) {
+        super(testName);
+    }
+    
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+    }
+    
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    public void testAdd() {
+        DoubleLimitedQueue myMagnificentQueue = new DoubleLimitedQueue(3);
+        assertTrue(myMagnificentQueue.add(1.0));
+        assertTrue(myMagnificentQueue.add(2.0));
+        assertTrue(myMagnificentQueue.add(3.0));
+        assertTrue(myMagnificentQueue.add(4.0));
+        assertTrue(myMagnificentQueue.add(5.0));
+        
+        //And now for something completely different
+        ArrayList<Double> a = new ArrayList();
+        a.add(3.0);
+        a.add(4.0);
+        a.add(5.0);
+        Iterator<Double> j = a.iterator();
+        Iterator<Double> i = myMagnificentQueue.iterator();
+        while(j.hasNext()) {
+            assertTrue(i.next().equals(j.next()));
+        }
+        assertFalse(i.hasNext());
+        
+    }
+    
+    public void testClear() {
+        DoubleLimitedQueue myMagnificentQueue = new DoubleLimitedQueue(6);
+        assertTrue(myMagnificentQueue.add(1.0));
+        assertTrue(myMagnificentQueue.add(2.0));
+        assertTrue(myMagnificentQueue.add(3.0));
+        assertTrue(myMagnificentQueue.add(4.0));
+        assertTrue(myMagnificentQueue.add(5.0));
+        
+        myMagnificentQueue.clear();
+        Iterator<Double> i = myMagnificentQueue.iterator();
+        assertFalse(i.hasNext());
+        assertTrue(myMagnificentQueue.size() == 0);
+    }
+    
+    public void testPoll() {
+        DoubleLimitedQueue myMagnificentQueue = new DoubleLimitedQueue(6);
+        assertTrue(myMagnificentQueue.add(1.0));
+        assertTrue(myMagnificentQueue.add(2.0));
+        assertTrue(myMagnificentQueue.add(3.0));
+        assertTrue(myMagnificentQueue.add(4.0));
+        assertTrue(myMagnificentQueue.add(5.0));
+        
+        assertTrue(myMagnificentQueue.getSize() == 5);
+        assertTrue(myMagnificentQueue.poll() == 1.0);
+        assertTrue(myMagnificentQueue.getSize() == 4);
+    }
+    
+    public void testPeek() {
+        DoubleLimitedQueue myMagnificentQueue = new DoubleLimitedQueue(6);
+        assertTrue(myMagnificentQueue.add(1.0));
+        assertTrue(myMagnificentQueue.add(2.0));
+        assertTrue(myMagnificentQueue.add(3.0));
+        assertTrue(myMagnificentQueue.add(4.0));
+        assertTrue(myMagnificentQueue.add(5.0));
+        
+        assertTrue(myMagnificentQueue.getSize() == 5);
+        assertTrue(myMagnificentQueue.peek() == 1.0);
+        assertTrue(myMagnificentQueue.getSize() == 5);
+    }
+    
+    public void testDoubleLimitedQueueIteratorRemove() {
+        DoubleLimitedQueue myMagnificentQueue = new DoubleLimitedQueue(6);
+        assertTrue(myMagnificentQueue.add(1.0));
+        assertTrue(myMagnificentQueue.add(2.0));
+        assertTrue(myMagnificentQueue.add(3.0));
+        assertTrue(myMagnificentQueue.add(4.0));
+        assertTrue(myMagnificentQueue.add(5.0));
+        
+        Iterator<Double> i = myMagnificentQueue.iterator();
+        assertTrue(i.next() == 1.0);
+        i.remove();
+        
+        assertTrue(myMagnificentQueue.getSize() == 4);
+        assertTrue(myMagnificentQueue.peek() == 2.0);
+    }
+    
+    public void testSum() {
+        DoubleLimitedQueue myMagnificentQueue = new DoubleLimitedQueue(3);
+        double[] values = {0.1, 2.5, 1.7, 0.3, 4.2, 0.9, 3.3};
+        for (int k = 0; k < values.length; k++) {
+            myMagnificentQueue.offerDouble(values[k]);
+            double expected = 0;
+            for (int l = Math.max(0, k - 2); l <= k; l++) {
+                expected += values[l];
+            }
+            assertTrue(Math.abs(myMagnificentQueue.getSum() - expected) < 0.000001);
+        }
+        
+        Iterator<Double> i = myMagnificentQueue.iterator();
+        assertTrue(i.next() == 4.2);
+        i.remove();
+        assertTrue(Math.abs(myMagnificentQueue.getSum() - 4.2) < 0.000001);
+        assertTrue(myMagnificentQueue.get(0) == 0.9);
+        assertTrue(myMagnificentQueue.get(1) == 3.3);
+        
+        myMagnificentQueue.clear();
+        assertTrue(myMagnificentQueue.getSum() == 0);
+    }
+}
@@ -33,11 +33,19 @@ package org.gdms.usm;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.io.ParseException;
 import com.vividsolutions.jts.io.WKTReader;
+import java.io.File;
+import java.io.IOException;
 import junit.framework.TestCase;
 import org.gdms.data.DataSourceCreationException;
 import org.gdms.data.DataSourceFactory;
+import org.gdms.data.schema.DefaultMetadata;
+import org.gdms.data.types.Type;
+import org.gdms.data.types.TypeFactory;
+import org.gdms.data.values.Value;
+import org.gdms.data.values.ValueFactory;
 import org.gdms.driver.DriverException;
 import org.gdms.driver.driverManager.DriverLoadException;
+import org.gdms.driver.gdms.GdmsWriter;
 
 /**
  *
@@ -110,4 +118,48 @@ public class GaussParcelComparatorTest extends TestCase {
         
         assertTrue(gpss.equals(p, p4));
     }
+    
+    public void testCompareNearTies() throws ParseException, DriverLoadException, DataSourceCreationException, DriverException, IOException {
+        File globals = new File(outputPathForTests + "/NearTieGlobals.gdms");
+        writeGlobals(globals, 0.1, 0.3);
+        try {
+            Step s = new Step(2000, dataPathForTests, globals.getPath(), outputPathForTests, bbtc, sdm, gps, dsf);
+            Manager m = s.getManager();
+            m.initializeGlobals();
+            Household iAmHomeless = new Household(1,38,48700);
+            GaussParcelComparator gpss = new GaussParcelComparator(iAmHomeless,m);
+            WKTReader wktr = new WKTReader();
+            Geometry g = wktr.read("POLYGON ((0 0, 0 1, 1 1, 1 0, 0 0))");
+            Parcel p = new Parcel(1,3,140,0,0,0,1,44109,"ADR",g,bbtc);
+            Parcel p2 = new Parcel(2,3,140,3,3,3,0,44109,"ADR",g,bbtc);
+            
+            //0.3 against 0.1 * 3 : closer than 1e-6, but still ordered
+            assertTrue(Math.abs(gpss.getParcelScore(p) - gpss.getParcelScore(p2)) < 0.000001);
+            assertTrue(gpss.compare(p, p2) < 0);
+            assertTrue(gpss.compare(p2, p) > 0);
+            assertFalse(gpss.equals(p, p2));
+        } finally {
+            globals.delete();
+        }
+    }
+    
+    private void writeGlobals(File file, double amenitiesWeighting, double constructibilityWeighting) throws DriverException, IOException {
+        String[] names = {"bufferSize", "amenitiesWeighting", "constructibilityWeighting", "idealhousingWeighting", "gaussDeviation",
+            "segregationThreshold", "segregationTolerance", "householdMemory", "movingThreshold", "immigrantNumber", "numberOfTurns",
+            "year", "threshold_1", "threshold_2", "threshold_3", "threshold_4"};
+        Type doubl = TypeFactory.createType(Type.DOUBLE);
+        Type integ = TypeFactory.createType(Type.INT);
+        Type[] types = {doubl, doubl, doubl, doubl, doubl, doubl, doubl, integ, doubl, integ, integ, integ, doubl, doubl, doubl, doubl};
+        Value[] row = {ValueFactory.createValue(30.0), ValueFactory.createValue(amenitiesWeighting), ValueFactory.createValue(constructibilityWeighting),
+            ValueFactory.createValue(0.0), ValueFactory.createValue(0.1), ValueFactory.createValue(0.8), ValueFactory.createValue(0.3),
+            ValueFactory.createValue(5), ValueFactory.createValue(30.0), ValueFactory.createValue(0), ValueFactory.createValue(1),
+            ValueFactory.createValue(2000), ValueFactory.createValue(1.0), ValueFactory.createValue(1.0), ValueFactory.createValue(1.0), ValueFactory.createValue(1.0)};
+        GdmsWriter writer = new GdmsWriter(file);
+        writer.writeMetadata(0, new DefaultMetadata(types, names));
+        writer.addValues(row);
+        writer.writeRowIndexes();
+        writer.writeExtent();
+        writer.writeWritenRowCount();
+        writer.close();
+    }
 }
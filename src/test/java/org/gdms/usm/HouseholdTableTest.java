@@ -0,0 +1,185 @@
+/**
+ *
+ * Gdms-USM is a library dedicated to multi-agent simulation for modeling urban sprawl.
+ * It is based on the GDMS library. It uses the OrbisGIS renderer to display results.
+ *
+ * This version is developed at French IRSTV Institute and at LIENSs UMR 7266 laboratory
+ * (http://lienss.univ-larochelle.fr/) as part of the VegDUD project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-09-VILL-0007.
+ *
+ * Gdms-USM is distributed under GPL 3 license. It is maintained by the "Atelier SIG" team of
+ * the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Gdms-USM is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Gdms-USM is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Gdms-USM. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://trac.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.usm;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKTReader;
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Thomas Salliou
+ */
+public class HouseholdTableTest extends TestCase {
+    
+    public HouseholdTableTest(String testName) {
+        super(testName);
+    }
+    
+    private Parcel defaultParcelBuilder() throws ParseException {
+        WKTReader wktr = new WKTReader();
+        Geometry geometry = wktr.read("POLYGON((0 0, 0 10, 10 10, 10 0, 0 0))");
+        return new Parcel(8,2,2,20,20,20,10,50,44109,"AB",geometry, new BufferBuildTypeCalculator());
+    }
+    
+    /**
+     * Adds parcels to a parcel list up to a given index.
+     * @return the parcel at this index
+     */
+    private Parcel parcelAt(List<Parcel> parcels, int index) throws ParseException {
+        while (parcels.size() <= index) {
+            Parcel p = defaultParcelBuilder();
+            p.setIndex(parcels.size());
+            parcels.add(p);
+        }
+        return parcels.get(index);
+    }
+    
+    public void testWriteThrough() throws ParseException {
+        List<Parcel> parcels = new ArrayList<Parcel>();
+        HouseholdTable table = new HouseholdTable(parcels);
+        Parcel p = parcelAt(parcels, 3);
+        Household h = new Household(12, 40, 48000);
+        table.add(h);
+        int slot = table.nextLive(0);
+        assertTrue(table.getId(slot) == 12);
+        assertTrue(table.getMaxWealth(slot) == 48000);
+        assertTrue(table.getParcelIndex(slot) == -1);
+        
+        h.moveIn(p);
+        h.grow();
+        assertTrue(table.getParcelIndex(slot) == 3);
+        assertTrue(table.getAge(slot, 0) == 41);
+        assertTrue(table.countHoused() == 1);
+        
+        h.moveOut();
+        assertTrue(table.getParcelIndex(slot) == -1);
+        assertTrue(table.countHoused() == 0);
+    }
+    
+    public void testAgingEngine() throws ParseException {
+        List<Parcel> parcels = new ArrayList<Parcel>();
+        HouseholdTable table = new HouseholdTable(parcels);
+        CohortAgingEngine engine = new CohortAgingEngine();
+        Parcel p = parcelAt(parcels, 0);
+        p.setAgingEngine(engine);
+        Household h = new Household(1, 30, 48000);
+        table.add(h);
+        h.moveIn(p);
+        engine.advance();
+        engine.advance();
+        assertTrue(table.getAge(table.nextLive(0), engine.getYear()) == 32);
+    }
+    
+    public void testRemoveKeepsAttributes() throws ParseException {
+        List<Parcel> parcels = new ArrayList<Parcel>();
+        HouseholdTable table = new HouseholdTable(parcels);
+        CohortAgingEngine engine = new CohortAgingEngine();
+        Parcel p = parcelAt(parcels, 4);
+        p.setAgingEngine(engine);
+        Household h = new Household(7, 30, 48000);
+        table.add(h);
+        h.moveIn(p);
+        engine.advance();
+        
+        //The attributes live in the columns, and follow the household when it leaves the table.
+        table.remove(h);
+        assertTrue(h.getTable() != table);
+        assertTrue(h.getId() == 7);
+        assertTrue(table.size() == 0);
+        assertTrue(h.getAge() == 31);
+        assertTrue(h.getMaxWealth() == 48000);
+        assertTrue(h.getHousingPlot() == p);
+        engine.advance();
+        assertTrue(h.getAge() == 32);
+        
+        table.add(h);
+        assertTrue(table.getAge(h.getTableSlot(), engine.getYear()) == 32);
+        assertTrue(table.getParcelIndex(h.getTableSlot()) == 4);
+        h.moveOut();
+        h.grow();
+        assertTrue(table.getAge(h.getTableSlot(), engine.getYear()) == 33);
+        assertTrue(table.countHoused() == 0);
+    }
+    
+    public void testSlotReuse() {
+        HouseholdTable table = new HouseholdTable(new ArrayList<Parcel>());
+        Household[] households = new Household[10000];
+        for (int i = 0; i < households.length; i++) {
+            households[i] = new Household(i, 20 + i % 60, 10000 + i);
+            table.add(households[i]);
+        }
+        assertTrue(table.size() == households.length);
+        assertTrue(table.getCapacity() >= households.length);
+        
+        table.remove(households[5]);
+        table.remove(households[7]);
+        assertTrue(table.size() == households.length - 2);
+        Household newcomer = new Household(10000, 20, 30000);
+        table.add(newcomer);
+        assertTrue(newcomer.getTableSlot() == 5);
+        
+        int count = 0;
+        for (int slot = table.nextLive(0); slot >= 0; slot = table.nextLive(slot + 1)) {
+            count++;
+        }
+        assertTrue(count == table.size());
+    }
+    
+    public void testForeignParcel() throws ParseException {
+        List<Parcel> parcels = new ArrayList<Parcel>();
+        HouseholdTable table = new HouseholdTable(parcels);
+        parcelAt(parcels, 2);
+        Parcel foreign = defaultParcelBuilder();
+        
+        //A household alone in its table can live anywhere.
+        Household h = new Household(3, 40, 48000);
+        h.moveIn(foreign);
+        assertTrue(h.getHousingPlot() == foreign);
+        try {
+            table.add(h);
+            fail("A parcel out of the parcel list cannot be stored as an index.");
+        } catch (IllegalArgumentException e) {
+        }
+        
+        //The failed add leaves both tables as they were.
+        assertTrue(table.size() == 0);
+        assertTrue(h.getHousingPlot() == foreign);
+        h.moveOut();
+        table.add(h);
+        assertTrue(table.size() == 1);
+        h.moveIn(parcels.get(2));
+        assertTrue(table.getParcelIndex(h.getTableSlot()) == 2);
+    }
+}
@@ -0,0 +1,198 @@
+/**
+ *
+ * Gdms-USM is a library dedicated to multi-agent simulation for modeling urban sprawl.
+ * It is based on the GDMS library. It uses the OrbisGIS renderer to display results.
+ *
+ * This version is developed at French IRSTV Institute and at LIENSs UMR 7266 laboratory
+ * (http://lienss.univ-larochelle.fr/) as part of the VegDUD project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-09-VILL-0007.
+ *
+ * Gdms-USM is distributed under GPL 3 license. It is maintained by the "Atelier SIG" team of
+ * the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Gdms-USM is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Gdms-USM is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Gdms-USM. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://trac.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.usm;
+
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Thomas Salliou
+ */
+public class IdealHousingTableTest extends TestCase {
+    
+    public IdealHousingTableTest(String testName) {
+        super(testName);
+    }
+    
+    /**
+     * The ideal housing coefficient as it was computed before the table.
+     */
+    private static int legacyIHC(int buildType, int wealth, int theAge) {
+        int ihcByWealth = 66;
+        int ihcByAge = 66;
+        switch (buildType) {
+            case 1:
+            case 2:
+                if (wealth < 18000) {
+                    ihcByWealth = 62;
+                } else if (wealth < 25200) {
+                    ihcByWealth = 67;
+                } else if (wealth < 35400) {
+                    ihcByWealth = 56;
+                } else if (wealth < 45000) {
+                    ihcByWealth = 57;
+                } else {
+                    ihcByWealth = 52;
+                }
+
+                if (theAge < 25) {
+                    ihcByAge = 43;
+                } else if (theAge < 35) {
+                    ihcByAge = 58;
+                } else if (theAge < 50) {
+                    ihcByAge = 53;
+                } else if (theAge < 65) {
+                    ihcByAge = 63;
+                } else {
+                    ihcByAge = 81;
+                }
+                break;
+            case 3:
+                if (wealth < 18000) {
+                    ihcByWealth = 62;
+                } else if (wealth < 25200) {
+                    ihcByWealth = 61;
+                } else if (wealth < 35400) {
+                    ihcByWealth = 55;
+                } else if (wealth < 45000) {
+                    ihcByWealth = 49;
+                } else {
+                    ihcByWealth = 69;
+                }
+
+                if (theAge < 25) {
+                    ihcByAge = 81;
+                } else if (theAge < 35) {
+                    ihcByAge = 54;
+                } else if (theAge < 50) {
+                    ihcByAge = 53;
+                } else if (theAge < 65) {
+                    ihcByAge = 59;
+                } else {
+                    ihcByAge = 61;
+                }
+                break;
+            case 4:
+            case 5:
+                if (wealth < 18000) {
+                    ihcByWealth = 77;
+                } else if (wealth < 25200) {
+                    ihcByWealth = 72;
+                } else if (wealth < 35400) {
+                    ihcByWealth = 89;
+                } else if (wealth < 45000) {
+                    ihcByWealth = 94;
+                } else {
+                    ihcByWealth = 79;
+                }
+
+                if (theAge < 25) {
+                    ihcByAge = 76;
+                } else if (theAge < 35) {
+                    ihcByAge = 88;
+                } else if (theAge < 50) {
+                    ihcByAge = 94;
+                } else if (theAge < 65) {
+                    ihcByAge = 79;
+                } else {
+                    ihcByAge = 58;
+                }
+                break;
+            default:
+                throw new IllegalArgumentException();
+        }
+        return (ihcByAge + ihcByWealth) / 2;
+    }
+
+    /**
+     * Test that the table agrees with the legacy computation for every build type,
+     * age and maximum wealth around the band limits.
+     */
+    public void testAgreesWithLegacy() {
+        int[] maxWealths = {0, 10000, 17999, 18000, 25199, 25200, 30000, 35399, 35400, 44999, 45000, 60000, 100000};
+        for (int maxWealth : maxWealths) {
+            for (int age = 0; age <= 100; age++) {
+                Household h = new Household(0, age, maxWealth);
+                for (int buildType = 1; buildType <= 5; buildType++) {
+                    assertEquals(legacyIHC(buildType, h.getWealth(), age), h.getIdealHousingCoefficient(buildType));
+                }
+            }
+        }
+    }
+
+    /**
+     * Test every band combination directly.
+     */
+    public void testEveryClass() {
+        int[] ages = {20, 30, 40, 60, 70};
+        int[] wealths = {10000, 20000, 30000, 40000, 50000};
+        for (int buildType = 1; buildType <= 5; buildType++) {
+            for (int ageBand = 0; ageBand < 5; ageBand++) {
+                for (int wealthBand = 0; wealthBand < 5; wealthBand++) {
+                    assertEquals(legacyIHC(buildType, wealths[wealthBand], ages[ageBand]), IdealHousingTable.get(buildType, ageBand * 5 + wealthBand));
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that the class follows the age, through grow and the aging engine.
+     */
+    public void testClassFollowsAge() {
+        Household h = new Household(0, 24, 60000);
+        int before = h.getIdealHousingCoefficient(3);
+        h.grow();
+        assertEquals(legacyIHC(3, h.getWealth(), 25), h.getIdealHousingCoefficient(3));
+        assertTrue(before != h.getIdealHousingCoefficient(3));
+        
+        CohortAgingEngine engine = new CohortAgingEngine();
+        engine.attach(h);
+        for (int year = 0; year < 50; year++) {
+            assertEquals(legacyIHC(4, h.getWealth(), h.getAge()), h.getIdealHousingCoefficient(4));
+            engine.advance();
+        }
+    }
+
+    /**
+     * Test that invalid build types are still refused.
+     */
+    public void testInvalidBuildType() {
+        Household h = new Household(0, 30, 30000);
+        int[] invalid = {-1, 0, 6, 7, 8};
+        for (int buildType : invalid) {
+            try {
+                h.getIdealHousingCoefficient(buildType);
+                fail("Build type " + buildType + " should be refused.");
+            } catch (IllegalArgumentException e) {
+            }
+        }
+    }
+}
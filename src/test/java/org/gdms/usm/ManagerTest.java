@@ -35,6 +35,10 @@ import com.vividsolutions.jts.io.ParseException;
 import com.vividsolutions.jts.io.WKTReader;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 import junit.framework.TestCase;
 import org.gdms.data.DataSource;
 import org.gdms.data.DataSourceCreationException;
@@ -73,6 +77,11 @@ public class ManagerTest extends TestCase {
         new File(outputPathForTests+"/Plot.gdms").delete();
         new File(outputPathForTests+"/PlotState.gdms").delete();
         new File(outputPathForTests+"/Step.gdms").delete();
+        for (String table : new String[]{"Household", "HouseholdState", "PlotState", "Step"}) {
+            for (int k = 1; k < 3; k++) {
+                new File(outputPathForTests+"/"+table+"_"+k+".gdms").delete();
+            }
+        }
     }
 
     private Step instanciateDummyParcels() throws ParseException, DriverLoadException, DataSourceCreationException, DriverException, IOException {
@@ -181,6 +190,23 @@ public class ManagerTest extends TestCase {
         assertTrue(m.getHomelessList().peek().getMaxWealth() > 9999 && m.getHomelessList().peek().getMaxWealth() < 60001);
     }
     
+    public void testSeededImmigrants() {
+        Step s1 = new Step(2000, dataPathForTests, globalsPathForTests, outputPathForTests, bbtc, sdm, gps, dsf);
+        Step s2 = new Step(2000, dataPathForTests, globalsPathForTests, outputPathForTests, bbtc, sdm, gps, dsf);
+        s1.getManager().setSeed(1234);
+        s2.getManager().setSeed(1234);
+        for (int i = 0; i < 10; i++) {
+            s1.getManager().createImmigrant();
+            s2.getManager().createImmigrant();
+        }
+        List<Household> l1 = s1.getManager().getHomelessList();
+        List<Household> l2 = s2.getManager().getHomelessList();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(l1.get(i).getAge() == l2.get(i).getAge());
+            assertTrue(l1.get(i).getMaxWealth() == l2.get(i).getMaxWealth());
+        }
+    }
+    
     public void testCreateNewborn() throws ParseException {
         Step s = new Step(2000, dataPathForTests, globalsPathForTests, outputPathForTests, bbtc, sdm, gps, dsf);
         Manager m = new Manager(s, dataPathForTests, globalsPathForTests, outputPathForTests, bbtc, sdm, gps, dsf);
@@ -351,6 +377,100 @@ public class ManagerTest extends TestCase {
         stepDS.close();
     }    
     
+    public void testSaveStateAppends() throws DataSourceCreationException, DriverException, NoSuchTableException, NonEditableDataSourceException, IOException, IndexException {
+        Step s = new Step(2000, dataPathForTests, globalsPathForTests, outputPathForTests, bbtc, sdm, gps, dsf);
+        Manager m = s.getManager();
+        m.initializeSimulation();
+        m.initializeOutputDatabase();
+        m.appendState();
+        m.appendState();
+        
+        //Nothing is finalized before the checkpoint
+        DataSource stepDS = m.getDsf().getDataSource("Step");
+        stepDS.open();
+        assertTrue(stepDS.getRowCount() == 0);
+        stepDS.close();
+        
+        m.checkpointOutputDatabase();
+        stepDS = m.getDsf().getDataSource("Step");
+        stepDS.open();
+        assertTrue(stepDS.getRowCount() == 2);
+        stepDS.close();
+        
+        DataSource plotStateDS = m.getDsf().getDataSource("PlotState");
+        plotStateDS.open();
+        assertTrue(plotStateDS.getRowCount() == 2 * 6978);
+        plotStateDS.close();
+        
+        DataSource householdDS = m.getDsf().getDataSource("Household");
+        householdDS.open();
+        assertTrue(householdDS.getRowCount() == 193214);
+        householdDS.close();
+    }
+    
+    public void testCheckpointsAddSegments() throws DataSourceCreationException, DriverException, NoSuchTableException, NonEditableDataSourceException, IOException, IndexException {
+        Step s = new Step(2000, dataPathForTests, globalsPathForTests, outputPathForTests, bbtc, sdm, gps, dsf);
+        Manager m = s.getManager();
+        m.setCheckpointInterval(1);
+        m.initializeSimulation();
+        m.initializeOutputDatabase();
+        m.createNewborn(new Household(m.getPopulation(), 60, 47478));
+        m.appendState();
+        m.appendState();
+        m.appendState();
+        
+        //Every checkpoint finalizes its own segment, the older rows are not copied
+        assertTrue(new File(outputPathForTests+"/Step.gdms").exists());
+        assertTrue(new File(outputPathForTests+"/Step_1.gdms").exists());
+        assertTrue(new File(outputPathForTests+"/Step_2.gdms").exists());
+        assertTrue(new File(outputPathForTests+"/Household_1.gdms").exists());
+        assertFalse(new File(outputPathForTests+"/Household_2.gdms").exists());
+        DataSource stepDS = m.getDsf().getDataSource("Step_2");
+        stepDS.open();
+        assertTrue(stepDS.getRowCount() == 1);
+        stepDS.close();
+        DataSource householdDS = m.getDsf().getDataSource("Household");
+        householdDS.open();
+        assertTrue(householdDS.getRowCount() == 193214);
+        householdDS.close();
+        
+        //Closing merges the segments into the table files
+        m.closeOutputDatabase();
+        assertFalse(new File(outputPathForTests+"/Step_1.gdms").exists());
+        assertFalse(new File(outputPathForTests+"/Household_1.gdms").exists());
+        stepDS = m.getDsf().getDataSource("Step");
+        stepDS.open();
+        assertTrue(stepDS.getRowCount() == 3);
+        stepDS.close();
+        householdDS = m.getDsf().getDataSource("Household");
+        householdDS.open();
+        assertTrue(householdDS.getRowCount() == 193215);
+        assertTrue(householdDS.getFieldValue(193214, 1).getAsInt() == 47478);
+        householdDS.close();
+        DataSource plotStateDS = m.getDsf().getDataSource("PlotState");
+        plotStateDS.open();
+        assertTrue(plotStateDS.getRowCount() == 3 * 6978);
+        plotStateDS.close();
+    }
+    
+    public void testSaveStateBackpressure() throws DataSourceCreationException, DriverException, NoSuchTableException, NonEditableDataSourceException, IOException, IndexException {
+        Step s = new Step(2000, dataPathForTests, globalsPathForTests, outputPathForTests, bbtc, sdm, gps, dsf);
+        Manager m = s.getManager();
+        m.setWriteQueueDepth(1);
+        m.initializeSimulation();
+        m.initializeOutputDatabase();
+        for (int i = 0; i < 5; i++) {
+            m.appendState();
+        }
+        m.closeOutputDatabase();
+        
+        DataSource stepDS = m.getDsf().getDataSource("Step");
+        stepDS.open();
+        assertTrue(stepDS.getRowCount() == 5);
+        assertTrue(stepDS.getFieldValue(4, 2).getAsInt() == 193214);
+        stepDS.close();
+    }
+    
     public void testEverybodyGrows() throws ParseException, DriverLoadException, DataSourceCreationException, DriverException, IOException {
         Step s = instanciateDummyParcels();
         Manager m = s.getManager();
@@ -405,6 +525,40 @@ public class ManagerTest extends TestCase {
         assertTrue(m.getHomelessList().size() == 2);
     }
     
+    private List<Integer> moversOf(int parallelism) throws ParseException, DriverLoadException, DataSourceCreationException, DriverException {
+        StatisticalDecisionMaker statdm = new StatisticalDecisionMaker();
+        Step s = new Step(2000, dataPathForTests, globalsPathForTests, outputPathForTests, bbtc, statdm, gps, dsf);
+        Manager m = s.getManager();
+        m.initializeGlobals();
+        m.setMovingParallelism(parallelism);
+        int id = 0;
+        for (int i = 0; i < 200; i++) {
+            Parcel p = defaultParcelBuilder();
+            m.addParcel(p);
+            for (int j = 0; j < 5; j++) {
+                Household h = new Household(id, 20 + (id * 7) % 60, 10000 + (id * 7919) % 90000);
+                h.moveIn(p);
+                statdm.addHousehold(h);
+                statdm.addToDissatisfactionQueue(h, (id % 3) * 14.95);
+                id++;
+            }
+        }
+        
+        m.whoIsMoving();
+        List<Integer> movers = new ArrayList<Integer>();
+        for (Household h : m.getHomelessList()) {
+            movers.add(h.getId());
+        }
+        assertTrue(movers.size() == m.getMoversCount());
+        return movers;
+    }
+    
+    public void testWhoIsMovingInParallel() throws ParseException, DriverLoadException, DataSourceCreationException, DriverException {
+        List<Integer> sequential = moversOf(1);
+        assertFalse(sequential.isEmpty());
+        assertEquals(sequential, moversOf(4));
+    }
+    
     public void testEverybodyMovesIn() throws ParseException, NoSuchTableException, DataSourceCreationException, DriverException {
         Step s = new Step(2000, dataPathForTests, globalsPathForTests, outputPathForTests, bbtc, sdm, gps, dsf);
         Manager m = s.getManager();
@@ -427,6 +581,172 @@ public class ManagerTest extends TestCase {
         assertTrue(householdHub.getHouseholdList().contains(homeless4));
     }
     
+    private Manager crowdedManager(boolean batched, int parcelCount, int homelessCount) throws ParseException {
+        return crowdedManager(batched, true, sdm, parcelCount, homelessCount);
+    }
+    
+    private Manager crowdedManager(boolean batched, boolean householdTable, IsMovingDecisionMaker isdm, int parcelCount, int homelessCount) throws ParseException {
+        GaussParcelSelector selector = new GaussParcelSelector();
+        Step s = new Step(2000, dataPathForTests, globalsPathForTests, outputPathForTests, bbtc, sdm, selector, dsf);
+        Manager m = s.getManager();
+        if (isdm != sdm) {
+            m = new Manager(s, dataPathForTests, globalsPathForTests, outputPathForTests, bbtc, isdm, selector, dsf);
+            selector.setManager(m);
+            bbtc.setManager(m);
+            isdm.setManager(m);
+        }
+        m.setHouseholdTable(householdTable);
+        m.setSeed(11);
+        m.setBatchedMoveIn(batched);
+        WKTReader wktr = new WKTReader();
+        Random r = new Random(3);
+        for (int i = 0; i < parcelCount; i++) {
+            int x = (i % 100) * 10;
+            int y = (i / 100) * 10;
+            Geometry square = wktr.read("POLYGON ((" + x + " " + y + ", " + (x + 10) + " " + y + ", " + (x + 10) + " " + (y + 10) + ", " + x + " " + (y + 10) + ", " + x + " " + y + "))");
+            m.addParcel(new Parcel(i, 2 + r.nextInt(4), 0.01 * (1 + r.nextInt(8)), r.nextInt(21), r.nextInt(21), r.nextInt(21), r.nextInt(21), 44109, "AB", square, bbtc));
+        }
+        for (int i = 0; i < homelessCount; i++) {
+            m.getHomelessList().add(new Household(i, 20 + r.nextInt(60), 10000 + r.nextInt(80000)));
+        }
+        return m;
+    }
+    
+    /**
+     * Counts the housed households of each class.
+     */
+    private int[] housedByClass(Manager m) {
+        int[] housed = new int[Household.CLASS_COUNT];
+        for (Parcel p : m.getParcelList()) {
+            for (Household h : p.getHouseholdList()) {
+                housed[h.getHouseholdClass()]++;
+            }
+        }
+        return housed;
+    }
+    
+    public void testBatchedMoveInMatchesSequential() throws ParseException, NoSuchTableException, DataSourceCreationException, DriverException {
+        int[][] housedAndLost = new int[2][];
+        int[][] housedByClass = new int[2][];
+        for (int mode = 0; mode < 2; mode++) {
+            //More households than places, so that the households moving in last are left out.
+            Manager m = crowdedManager(mode == 1, 2000, 12000);
+            housedAndLost[mode] = housedAndLost(m);
+            assertEquals(12000, housedAndLost[mode][0] + housedAndLost[mode][1]);
+            housedByClass[mode] = housedByClass(m);
+        }
+        assertTrue(Math.abs(housedAndLost[1][0] - housedAndLost[0][0]) <= housedAndLost[0][0] / 50);
+        //No class gets the parcels first.
+        for (int c = 0; c < Household.CLASS_COUNT; c++) {
+            assertTrue(Math.abs(housedByClass[1][c] - housedByClass[0][c]) <= 5 + housedByClass[0][c] / 10);
+        }
+    }
+    
+    /**
+     * Moves in the homeless households of a manager, checking the densities and that the
+     * households which disappeared were deleted.
+     * @return the number of housed households and of households told disappeared
+     */
+    private int[] housedAndLost(Manager m) throws NoSuchTableException, DataSourceCreationException, DriverException {
+        final int[] result = new int[2];
+        m.getStep().registerStepListener(new StepListener() {
+            public void nextTurn(int cT, int nT, int pop, int dead, int newb, int mov) {
+            }
+            public void initializationDone() {
+            }
+            public void householdDisappeared(Household h) {
+                result[1]++;
+            }
+            public void simulationDone() {
+            }
+        });
+        final int[] deleted = new int[1];
+        m.registerManagerListener(new ManagerListener() {
+            public void householdAdded(Household h) {
+            }
+            public void householdDeleted(Household h) {
+                deleted[0]++;
+            }
+            public void householdMoved(Household h) {
+            }
+        });
+        m.everybodyMovesIn();
+        //the managers listeners are told too, for the dissatisfaction store to free the slots
+        assertEquals(result[1], deleted[0]);
+        assertTrue(m.getHomelessList().empty());
+        for (Parcel p : m.getParcelList()) {
+            assertTrue(p.getDensity() <= p.getMaxDensity());
+            result[0] += p.getLocalPopulation();
+        }
+        assertEquals(result[0], m.getHouseholdTable().countHoused());
+        return result;
+    }
+    
+    /**
+     * @return the parcel id of every household, by household id, -1 for the homeless
+     */
+    private int[] parcelOfHouseholds(Manager m, int householdCount) {
+        int[] parcelOf = new int[householdCount];
+        Arrays.fill(parcelOf, -1);
+        for (Parcel p : m.getParcelList()) {
+            for (Household h : p.getHouseholdList()) {
+                parcelOf[h.getId()] = p.getId();
+            }
+        }
+        return parcelOf;
+    }
+    
+    public void testParallelMoveIn() throws ParseException, NoSuchTableException, DataSourceCreationException, DriverException {
+        int[] sequential = housedAndLost(crowdedManager(false, 2000, 9000));
+        assertEquals(9000, sequential[0] + sequential[1]);
+        Manager m = crowdedManager(false, 2000, 9000);
+        m.setMoveInParallelism(4);
+        int[] parallel = housedAndLost(m);
+        assertEquals(9000, parallel[0] + parallel[1]);
+        assertTrue(Math.abs(parallel[0] - sequential[0]) <= sequential[0] / 50);
+        //conflicts are resolved by household order, not by thread timing
+        Manager again = crowdedManager(false, 2000, 9000);
+        again.setMoveInParallelism(4);
+        assertEquals(parallel[0], housedAndLost(again)[0]);
+        assertTrue(Arrays.equals(parcelOfHouseholds(m, 9000), parcelOfHouseholds(again, 9000)));
+        assertEquals(m.getMoveInConflicts(), again.getMoveInConflicts());
+        
+        try {
+            m.setMoveInParallelism(0);
+            fail("Parallelism below 1 should be refused.");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+    
+    public void testWhoIsMovingByColumns() throws ParseException, NoSuchTableException, DataSourceCreationException, DriverException {
+        IsMovingDecisionMaker everyThird = new IsMovingDecisionMaker() {
+            @Override
+            public boolean isMoving(Household h) {
+                return h.getId() % 3 == 0;
+            }
+            @Override
+            public boolean hasIndependentDecisions() {
+                return true;
+            }
+        };
+        int[][] movers = new int[3][];
+        for (int mode = 0; mode < 3; mode++) {
+            Manager m = crowdedManager(false, mode > 0, everyThird, 500, 1500);
+            m.setMovingParallelism(mode == 2 ? 4 : 1);
+            m.everybodyMovesIn();
+            m.whoIsMoving();
+            movers[mode] = new int[m.getHomelessList().size()];
+            for (int k = 0; k < movers[mode].length; k++) {
+                movers[mode][k] = m.getHomelessList().get(k).getId();
+            }
+            assertEquals(movers[mode].length, m.getMoversCount());
+        }
+        //Scanning the table moves out the same households in the same order as walking the parcels.
+        assertTrue(movers[0].length > 0);
+        assertTrue(Arrays.equals(movers[0], movers[1]));
+        assertTrue(Arrays.equals(movers[0], movers[2]));
+    }
+    
     public void testInitializeGlobals() throws DriverLoadException, DataSourceCreationException, DriverException {
         Step s = new Step(2000, dataPathForTests, globalsPathForTests, outputPathForTests, bbtc, sdm, gps, dsf);
         Manager m = s.getManager();
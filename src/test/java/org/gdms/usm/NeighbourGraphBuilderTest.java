@@ -0,0 +1,135 @@
+/**
+ *
+ * Gdms-USM is a library dedicated to multi-agent simulation for modeling urban sprawl.
+ * It is based on the GDMS library. It uses the OrbisGIS renderer to display results.
+ *
+ * This version is developed at French IRSTV Institute and at LIENSs UMR 7266 laboratory
+ * (http://lienss.univ-larochelle.fr/) as part of the VegDUD project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-09-VILL-0007.
+ *
+ * Gdms-USM is distributed under GPL 3 license. It is maintained by the "Atelier SIG" team of
+ * the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Gdms-USM is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Gdms-USM is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Gdms-USM. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://trac.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.usm;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Thomas Salliou
+ */
+public class NeighbourGraphBuilderTest extends TestCase {
+    
+    public NeighbourGraphBuilderTest(String testName) {
+        super(testName);
+    }
+    
+    private static final int GRID_SIDE = 60;
+    private static final double BUFFER_SIZE = 3;
+    
+    private List<Parcel> buildGrid() {
+        GeometryFactory gf = new GeometryFactory();
+        BufferBuildTypeCalculator bbtc = new BufferBuildTypeCalculator();
+        List<Parcel> parcels = new ArrayList<Parcel>();
+        for (int i = 0; i < GRID_SIDE * GRID_SIDE; i++) {
+            double x = (i % GRID_SIDE) * 10 + (i * 7 % 5);
+            double y = (i / GRID_SIDE) * 10 + (i * 3 % 4);
+            parcels.add(new Parcel(i,1,100,20,20,20,10,50,44109,"AB",gf.createPoint(new Coordinate(x, y)).buffer(4.5, 8), bbtc));
+        }
+        return parcels;
+    }
+    
+    public void testBuild() {
+        List<Parcel> parcels = buildGrid();
+        Parcel[][] graph = new NeighbourGraphBuilder(1).build(parcels, BUFFER_SIZE);
+        assertTrue(graph.length == parcels.size());
+        for (int i = 0; i < parcels.size(); i += 37) {
+            Parcel p = parcels.get(i);
+            Geometry bufferedGeom = p.getTheGeom().buffer(BUFFER_SIZE);
+            int expected = 0;
+            for (Parcel q : parcels) {
+                if (q != p && bufferedGeom.intersects(q.getTheGeom())) {
+                    expected++;
+                }
+            }
+            assertTrue(graph[i].length == expected);
+            for (int j = 1; j < graph[i].length; j++) {
+                assertTrue(graph[i][j - 1].getId() < graph[i][j].getId());
+            }
+        }
+    }
+    
+    public void testParallelBuildIsIdentical() {
+        List<Parcel> parcels = buildGrid();
+        Parcel[][] sequential = new NeighbourGraphBuilder(1).build(parcels, BUFFER_SIZE);
+        //Thread counts which do not divide the parcel count leave a shorter last chunk.
+        int[] parallelisms = {2, 3, 4, 7, 8};
+        for (int parallelism : parallelisms) {
+            Parcel[][] graph = new NeighbourGraphBuilder(parallelism).build(parcels, BUFFER_SIZE);
+            assertEquals(sequential.length, graph.length);
+            for (int i = 0; i < graph.length; i++) {
+                assertTrue(Arrays.equals(sequential[i], graph[i]));
+            }
+        }
+    }
+    
+    public void testDistanceSearch() {
+        List<Parcel> parcels = buildGrid();
+        Parcel[][] buffered = new NeighbourGraphBuilder(2).build(parcels, BUFFER_SIZE);
+        NeighbourGraphBuilder builder = new NeighbourGraphBuilder(2);
+        builder.setDistanceSearch(true);
+        Parcel[][] byDistance = builder.build(parcels, BUFFER_SIZE);
+        
+        //The buffer arcs are approximated by segments : neighbours may only differ near the buffer boundary.
+        double tolerance = BUFFER_SIZE * (1 - Math.cos(Math.PI / 16));
+        int differences = 0;
+        int total = 0;
+        for (int i = 0; i < parcels.size(); i++) {
+            Set<Parcel> expected = new HashSet<Parcel>(Arrays.asList(buffered[i]));
+            Set<Parcel> actual = new HashSet<Parcel>(Arrays.asList(byDistance[i]));
+            total += expected.size();
+            for (Parcel q : parcels) {
+                if (expected.contains(q) != actual.contains(q)) {
+                    differences++;
+                    assertTrue(Math.abs(parcels.get(i).getTheGeom().distance(q.getTheGeom()) - BUFFER_SIZE) < tolerance);
+                }
+            }
+        }
+        assertTrue(total > 0);
+        assertTrue(differences * 100 < total);
+    }
+    
+    public void testInvalidParallelism() {
+        try {
+            new NeighbourGraphBuilder(0);
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ *
+ * Gdms-USM is a library dedicated to multi-agent simulation for modeling urban sprawl.
+ * It is based on the GDMS library. It uses the OrbisGIS renderer to display results.
+ *
+ * This version is developed at French IRSTV Institute and at LIENSs UMR 7266 laboratory
+ * (http://lienss.univ-larochelle.fr/) as part of the VegDUD project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-09-VILL-0007.
+ *
+ * Gdms-USM is distributed under GPL 3 license. It is maintained by the "Atelier SIG" team of
+ * the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Gdms-USM is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Gdms-USM is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Gdms-USM. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://trac.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.usm;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Thomas Salliou
+ */
+public class NeighbourGraphCacheTest extends TestCase {
+    
+    public NeighbourGraphCacheTest(String testName) {
+        super(testName);
+    }
+    
+    private File dataFile;
+    private File cacheFile;
+    
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        dataFile = File.createTempFile("usm-data", ".gdms");
+        cacheFile = File.createTempFile("usm-graph", ".bin");
+        cacheFile.delete();
+        writeData(new byte[]{1, 2, 3, 4});
+    }
+    
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        dataFile.delete();
+        cacheFile.delete();
+    }
+    
+    private void writeData(byte[] content) throws IOException {
+        FileOutputStream out = new FileOutputStream(dataFile);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+    }
+    
+    private List<Parcel> buildGrid() {
+        GeometryFactory gf = new GeometryFactory();
+        BufferBuildTypeCalculator bbtc = new BufferBuildTypeCalculator();
+        List<Parcel> parcels = new ArrayList<Parcel>();
+        for (int i = 0; i < 900; i++) {
+            double x = (i % 30) * 10 + (i * 7 % 5);
+            double y = (i / 30) * 10 + (i * 3 % 4);
+            parcels.add(new Parcel(i,1,100,20,20,20,10,50,44109,"AB",gf.createPoint(new Coordinate(x, y)).buffer(4.5, 8), bbtc));
+        }
+        return parcels;
+    }
+    
+    private static void assertSameGraph(Parcel[][] expected, Parcel[][] actual) {
+        assertTrue(expected.length == actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertTrue(Arrays.equals(expected[i], actual[i]));
+        }
+    }
+    
+    public void testStoreAndLoad() throws IOException {
+        List<Parcel> parcels = buildGrid();
+        NeighbourGraphCache cache = new NeighbourGraphCache(cacheFile, dataFile);
+        assertNull(cache.load(parcels, 3, false));
+        
+        Parcel[][] graph = new NeighbourGraphBuilder(1).build(parcels, 3);
+        cache.store(graph, parcels, 3, false);
+        assertTrue(cacheFile.isFile());
+        
+        assertSameGraph(graph, cache.load(parcels, 3, false));
+        //Loading leaves the cache in place for the next run.
+        assertTrue(cacheFile.isFile());
+        assertSameGraph(graph, new NeighbourGraphCache(cacheFile, dataFile).load(parcels, 3, false));
+    }
+    
+    public void testInvalidation() throws IOException {
+        List<Parcel> parcels = buildGrid();
+        NeighbourGraphCache cache = new NeighbourGraphCache(cacheFile, dataFile);
+        cache.store(new NeighbourGraphBuilder(1).build(parcels, 3), parcels, 3, false);
+        
+        assertNull(cache.load(parcels, 4, false));
+        assertNull(cache.load(parcels, 3, true));
+        assertNull(cache.load(parcels.subList(0, 100), 3, false));
+        writeData(new byte[]{1, 2, 3, 5});
+        assertNull(cache.load(parcels, 3, false));
+    }
+    
+    public void testDataFileIdentity() throws IOException {
+        List<Parcel> parcels = buildGrid();
+        NeighbourGraphCache cache = new NeighbourGraphCache(cacheFile, dataFile);
+        Parcel[][] graph = new NeighbourGraphBuilder(1).build(parcels, 3);
+        cache.store(graph, parcels, 3, false);
+        
+        //Same content with another date or at another path : the content key still matches.
+        assertTrue(dataFile.setLastModified(dataFile.lastModified() - 60000));
+        assertSameGraph(graph, cache.load(parcels, 3, false));
+        assertSameGraph(graph, cache.load(parcels, 3, false));
+        File copy = File.createTempFile("usm-copy", ".gdms");
+        try {
+            FileOutputStream out = new FileOutputStream(copy);
+            try {
+                out.write(new byte[]{1, 2, 3, 4});
+            } finally {
+                out.close();
+            }
+            assertSameGraph(graph, new NeighbourGraphCache(cacheFile, copy).load(parcels, 3, false));
+            
+            //Another length is rejected without reading the content.
+            writeData(new byte[]{1, 2, 3, 4, 5});
+            assertNull(cache.load(parcels, 3, false));
+        } finally {
+            copy.delete();
+        }
+    }
+    
+    public void testBuilderUsesCache() throws IOException {
+        List<Parcel> parcels = buildGrid();
+        NeighbourGraphBuilder builder = new NeighbourGraphBuilder(2);
+        builder.setCache(new NeighbourGraphCache(cacheFile, dataFile));
+        Parcel[][] graph = builder.build(parcels, 3);
+        assertTrue(cacheFile.isFile());
+        assertSameGraph(graph, builder.build(parcels, 3));
+        
+        builder.setDistanceSearch(true);
+        Parcel[][] byDistance = builder.build(parcels, 3);
+        assertSameGraph(byDistance, builder.build(parcels, 3));
+        assertNotNull(builder.getCache().load(parcels, 3, true));
+        assertNull(builder.getCache().load(parcels, 3, false));
+    }
+}
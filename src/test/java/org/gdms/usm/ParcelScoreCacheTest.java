@@ -0,0 +1,130 @@
+/**
+ *
+ * Gdms-USM is a library dedicated to multi-agent simulation for modeling urban sprawl.
+ * It is based on the GDMS library. It uses the OrbisGIS renderer to display results.
+ *
+ * This version is developed at French IRSTV Institute and at LIENSs UMR 7266 laboratory
+ * (http://lienss.univ-larochelle.fr/) as part of the VegDUD project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-09-VILL-0007.
+ *
+ * Gdms-USM is distributed under GPL 3 license. It is maintained by the "Atelier SIG" team of
+ * the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Gdms-USM is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Gdms-USM is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Gdms-USM. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://trac.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.usm;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKTReader;
+import junit.framework.TestCase;
+import org.gdms.data.DataSourceCreationException;
+import org.gdms.data.DataSourceFactory;
+import org.gdms.driver.DriverException;
+import org.gdms.driver.driverManager.DriverLoadException;
+
+/**
+ *
+ * @author Thomas Salliou
+ */
+public class ParcelScoreCacheTest extends TestCase {
+    
+    public ParcelScoreCacheTest(String testName) {
+        super(testName);
+    }
+    
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+    }
+    
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+    }
+    
+    private String dataPathForTests = "src/test/resources/initialdatabase.gdms";
+    private String globalsPathForTests = "src/test/resources/globals.gdms";
+    private String outputPathForTests = "src/test/resources";
+    private DataSourceFactory dsf = new DataSourceFactory(outputPathForTests + "/gdms");
+    private BufferBuildTypeCalculator bbtc = new BufferBuildTypeCalculator();
+    private StatisticalDecisionMaker sdm = new StatisticalDecisionMaker();
+    private GaussParcelSelector gps = new GaussParcelSelector();
+    
+    private Manager instanciateDummyParcels() throws ParseException, DriverLoadException, DataSourceCreationException, DriverException {
+        Step s = new Step(2000, dataPathForTests, globalsPathForTests, outputPathForTests, bbtc, sdm, gps, dsf);
+        Manager m = s.getManager();
+        m.initializeGlobals();
+        WKTReader wktr = new WKTReader();
+        Geometry g = wktr.read("POLYGON ((0 0, 4 0, 4 4, 0 4, 0 0))");
+        m.addParcel(new Parcel(1,1,100,5,6,7,80,44578,"AUY",g,bbtc));
+        m.addParcel(new Parcel(2,3,300,14,13,12,70,44109,"OPH",g,bbtc));
+        m.addParcel(new Parcel(3,4,400,15,2,9,90,44710,"AHA",g,bbtc));
+        m.addParcel(new Parcel(4,2,200,12,12,12,80,44109,"PLU",g,bbtc));
+        m.addParcel(new Parcel(5,5,500,18,3,18,100,44109,"POT",g,bbtc));
+        m.addParcel(new Parcel(6,7,0,10,10,10,47,44780,"PCT",g,bbtc));
+        return m;
+    }
+    
+    public void testScoresMatchComparator() throws ParseException, DriverLoadException, DataSourceCreationException, DriverException {
+        Manager m = instanciateDummyParcels();
+        ParcelScoreCache cache = m.getScoreCache();
+        int[] ages = {20, 30, 40, 55, 70};
+        int[] maxWealths = {15000, 30000, 45000, 60000, 140000};
+        for (int age : ages) {
+            for (int maxWealth : maxWealths) {
+                Household h = new Household(1, age, maxWealth);
+                GaussParcelComparator gpc = new GaussParcelComparator(h, m);
+                for (Parcel p : m.getParcelList()) {
+                    if (p.getBuildType() != 7) {
+                        assertTrue(Math.abs(cache.getScore(h, p) - gpc.computeParcelScore(p)) < 0.000001);
+                    }
+                }
+            }
+        }
+    }
+    
+    public void testOrder() throws ParseException, DriverLoadException, DataSourceCreationException, DriverException {
+        Manager m = instanciateDummyParcels();
+        Household h = new Household(1, 45, 62000);
+        ParcelScoreCache cache = m.getScoreCache();
+        int[] order = cache.getOrder(h);
+        double[] scores = cache.getScores(h);
+        for (int i = 1; i < order.length; i++) {
+            if (!Double.isNaN(scores[order[i - 1]]) && !Double.isNaN(scores[order[i]])) {
+                assertTrue(scores[order[i - 1]] <= scores[order[i]] + 0.000001);
+            }
+        }
+    }
+    
+    public void testInvalidate() throws ParseException, DriverLoadException, DataSourceCreationException, DriverException {
+        Manager m = instanciateDummyParcels();
+        Household h = new Household(1, 45, 62000);
+        ParcelScoreCache cache = m.getScoreCache();
+        Parcel p = m.getParcelList().get(0);
+        cache.getScores(h);
+        
+        p.updateBuildType(0, 0.5, 1, 2);
+        assertTrue(p.getBuildType() == 2);
+        cache.invalidate(p);
+        
+        GaussParcelComparator gpc = new GaussParcelComparator(h, m);
+        assertTrue(Math.abs(cache.getScore(h, p) - gpc.computeParcelScore(p)) < 0.000001);
+    }
+}
@@ -0,0 +1,239 @@
+/**
+ *
+ * Gdms-USM is a library dedicated to multi-agent simulation for modeling urban sprawl.
+ * It is based on the GDMS library. It uses the OrbisGIS renderer to display results.
+ *
+ * This version is developed at French IRSTV Institute and at LIENSs UMR 7266 laboratory
+ * (http://lienss.univ-larochelle.fr/) as part of the VegDUD project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-09-VILL-0007.
+ *
+ * Gdms-USM is distributed under GPL 3 license. It is maintained by the "Atelier SIG" team of
+ * the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Gdms-USM is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Gdms-USM is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Gdms-USM. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://trac.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.usm;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Thomas Salliou
+ */
+public class ParcelTableTest extends TestCase {
+    
+    public ParcelTableTest(String testName) {
+        super(testName);
+    }
+    
+    private static final double AMENITIES_WEIGHTING = 0.4;
+    private static final double CONSTRUCTIBILITY_WEIGHTING = 0.25;
+    private static final double IDEALHOUSING_WEIGHTING = 0.35;
+    
+    private List<Parcel> buildParcels(ParcelTable table, int count) {
+        GeometryFactory gf = new GeometryFactory();
+        BufferBuildTypeCalculator bbtc = new BufferBuildTypeCalculator();
+        Random r = new Random(17);
+        List<Parcel> parcels = new ArrayList<Parcel>();
+        int id = 0;
+        for (int i = 0; i < count; i++) {
+            int buildType = i % 11 == 0 ? 7 : 1 + r.nextInt(5);
+            Parcel p = new Parcel(i, buildType, 0.0004 + r.nextDouble() * 0.001, r.nextInt(21), r.nextInt(21), r.nextInt(21), r.nextInt(21), 44109, "AB",
+                    gf.createPoint(new Coordinate(i * 100, 0)).buffer(20 + r.nextInt(30), 2), bbtc);
+            table.add(p);
+            for (int k = r.nextInt(4); k > 0; k--) {
+                new Household(id++, 20 + r.nextInt(60), 10000 + r.nextInt(90000)).moveIn(p);
+            }
+            parcels.add(p);
+        }
+        return parcels;
+    }
+    
+    private static double objectScore(Household h, Parcel p) {
+        double amenitiesPart;
+        double constructibilityPart = CONSTRUCTIBILITY_WEIGHTING*((double) p.getConstructibilityIndex());
+        double idealHousingPart = IDEALHOUSING_WEIGHTING*(100.0 - (double) h.getIdealHousingCoefficient(p));
+        if (h.getAge() < 35) {
+            amenitiesPart = AMENITIES_WEIGHTING*((double) p.getAmenitiesIndex1());
+        } else if (h.getAge() < 65) {
+            amenitiesPart = AMENITIES_WEIGHTING*((double) p.getAmenitiesIndex2());
+        } else {
+            amenitiesPart = AMENITIES_WEIGHTING*((double) p.getAmenitiesIndex3());
+        }
+        return amenitiesPart+constructibilityPart+idealHousingPart;
+    }
+    
+    private static void tableScore(ParcelTable table, Household h, double[] scores) {
+        int[] ihcByBuildType = new int[NearbyBuildTypeCalculator.BUILD_TYPE_SLOTS];
+        for (int bt = 1; bt <= 5; bt++) {
+            ihcByBuildType[bt] = h.getIdealHousingCoefficient(bt);
+        }
+        int ageBracket = h.getAge() < 35 ? 0 : h.getAge() < 65 ? 1 : 2;
+        table.score(scores, ageBracket, ihcByBuildType, AMENITIES_WEIGHTING, CONSTRUCTIBILITY_WEIGHTING, IDEALHOUSING_WEIGHTING);
+    }
+    
+    public void testScore() {
+        ParcelTable table = new ParcelTable();
+        List<Parcel> parcels = buildParcels(table, 3000);
+        double[] scores = new double[table.size()];
+        Household[] households = {new Household(-1, 22, 15000), new Household(-1, 40, 30000), new Household(-1, 70, 90000)};
+        for (Household h : households) {
+            tableScore(table, h, scores);
+            for (int i = 0; i < parcels.size(); i++) {
+                if (parcels.get(i).getBuildType() == 7) {
+                    assertTrue(Double.isNaN(scores[i]));
+                } else {
+                    assertTrue(scores[i] == objectScore(h, parcels.get(i)));
+                }
+            }
+        }
+    }
+    
+    public void testFilterFollowsMutations() {
+        ParcelTable table = new ParcelTable();
+        List<Parcel> parcels = buildParcels(table, 3000);
+        for (int i = 0; i < parcels.size(); i += 3) {
+            Parcel p = parcels.get(i);
+            if (p.getBuildType() != 7) {
+                new Household(100000 + i, 45, 70000).moveIn(p);
+                p.updateBuildType(0.0005, 0.0008, 0.001, 0.0012);
+            }
+        }
+        int[] candidates = new int[table.size()];
+        int[] scanned = new int[table.size()];
+        int[] wealths = {0, 5000, 20000, 40000, 80000, 200000};
+        for (int wealth : wealths) {
+            int count = table.filter(candidates, wealth);
+            assertEquals(count, table.scanFilter(scanned, wealth));
+            for (int k = 0; k < count; k++) {
+                assertEquals(scanned[k], candidates[k]);
+            }
+            int k = 0;
+            for (int i = 0; i < parcels.size(); i++) {
+                Parcel p = parcels.get(i);
+                if (p.getBuildType() != 7 && !p.isFull() && wealth > 0.66*p.getAverageWealth()) {
+                    assertTrue(candidates[k++] == i);
+                }
+            }
+            assertTrue(k == count);
+        }
+    }
+    
+    public void testFilterBetweenMutations() {
+        ParcelTable table = new ParcelTable();
+        List<Parcel> parcels = buildParcels(table, 3000);
+        Random r = new Random(8);
+        int[] candidates = new int[table.size()];
+        int[] scanned = new int[table.size()];
+        List<Household> moved = new ArrayList<Household>();
+        for (int round = 0; round < 2000; round++) {
+            Parcel p = parcels.get(r.nextInt(parcels.size()));
+            if (!moved.isEmpty() && r.nextInt(3) == 0) {
+                moved.remove(r.nextInt(moved.size())).moveOut();
+            } else if (p.getBuildType() != 7 && !p.isFull()) {
+                Household h = new Household(400000 + round, 45, 10000 + r.nextInt(90000));
+                h.moveIn(p);
+                moved.add(h);
+            }
+            int wealth = r.nextInt(120000);
+            int count = table.filter(candidates, wealth);
+            assertEquals(count, table.scanFilter(scanned, wealth));
+            for (int k = 0; k < count; k++) {
+                assertEquals(scanned[k], candidates[k]);
+            }
+        }
+    }
+    
+    public void testVacancyIndex() {
+        ParcelTable table = new ParcelTable();
+        List<Parcel> parcels = buildParcels(table, 3000);
+        Random r = new Random(5);
+        List<Household> moved = new ArrayList<Household>();
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < parcels.size(); i++) {
+                Parcel p = parcels.get(i);
+                if (p.getBuildType() != 7 && r.nextInt(3) == 0) {
+                    Household h = new Household(200000 + moved.size(), 45, 70000);
+                    h.moveIn(p);
+                    moved.add(h);
+                    p.updateBuildType(0.0005, 0.0008, 0.001, 0.0012);
+                }
+            }
+            for (int k = moved.size() - 1; k >= 0; k -= 2) {
+                moved.remove(k).moveOut();
+            }
+            int vacancies = 0;
+            for (int i = 0; i < parcels.size(); i++) {
+                Parcel p = parcels.get(i);
+                boolean expected = p.getBuildType() != 7 && !p.isFull();
+                assertEquals(expected, table.isVacant(i));
+                if (expected) {
+                    vacancies++;
+                }
+            }
+            assertEquals(vacancies, table.getVacancyCount());
+        }
+    }
+    
+    public void testFilterInDenseCity() {
+        ParcelTable table = new ParcelTable();
+        List<Parcel> parcels = buildParcels(table, 5000);
+        //Most parcels are left with rich residents only, so that poor households use the wealth range.
+        for (int i = 0; i < parcels.size(); i++) {
+            Parcel p = parcels.get(i);
+            if (p.getBuildType() != 7 && i % 20 != 0) {
+                new Household(300000 + i, 60, 200000).moveIn(p);
+            }
+        }
+        int[] candidates = new int[table.size()];
+        int[] scanned = new int[table.size()];
+        int[] wealths = {8000, 30000, 100000, 300000};
+        for (int wealth : wealths) {
+            int count = table.filter(candidates, wealth);
+            assertEquals(count, table.scanFilter(scanned, wealth));
+            for (int k = 0; k < count; k++) {
+                assertEquals(scanned[k], candidates[k]);
+            }
+        }
+        assertTrue(table.filter(candidates, 8000) < table.filter(candidates, 300000));
+    }
+    
+    public void testScoreEveryAge() {
+        ParcelTable table = new ParcelTable();
+        List<Parcel> parcels = buildParcels(table, 1000);
+        double[] scores = new double[table.size()];
+        //The same array is scored again for every age, as the selectors do.
+        for (int age = 20; age < 90; age += 3) {
+            Household h = new Household(-1, age, 12000 + 1000 * age);
+            tableScore(table, h, scores);
+            for (int i = 0; i < parcels.size(); i++) {
+                if (parcels.get(i).getBuildType() == 7) {
+                    assertTrue(Double.isNaN(scores[i]));
+                } else {
+                    assertEquals(objectScore(h, parcels.get(i)), scores[i], 0.0);
+                }
+            }
+        }
+    }
+}
@@ -35,6 +35,9 @@ import com.vividsolutions.jts.io.ParseException;
 import com.vividsolutions.jts.io.WKTReader;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 import junit.framework.TestCase;
 import org.gdms.data.DataSourceCreationException;
 import org.gdms.data.DataSourceFactory;
@@ -159,6 +162,51 @@ public class ParcelTest extends TestCase {
         assertTrue(parisSeizieme.getAverageWealth() == 47459);
     }
     
+    /**
+     * Brute-force average wealth, as it was computed before being maintained incrementally.
+     */
+    private int bruteForceAverageWealth(Parcel p) {
+        if (p.getLocalPopulation() == 0) {
+            return 0;
+        }
+        int total = 0;
+        for (Household h : p.getHouseholdList()) {
+            total += h.getWealth();
+        }
+        return total / p.getLocalPopulation();
+    }
+    
+    public void testGetAverageWealthRandomized() throws ParseException {
+        WKTReader wktr = new WKTReader();
+        Geometry geometry = wktr.read("POLYGON((0 0, 0 10, 10 10, 10 0, 0 0))");
+        Random generator = new Random(1789);
+        List<Parcel> parcels = new ArrayList<Parcel>();
+        for (int i = 0; i < 10; i++) {
+            parcels.add(new Parcel(i,2,1000,20,20,20,10,50,44109,"AB",geometry, bbtc));
+        }
+        List<Household> households = new ArrayList<Household>();
+        for (int i = 0; i < 300; i++) {
+            Household h = new Household(i, 20 + generator.nextInt(60), 10000 + generator.nextInt(100000));
+            h.moveIn(parcels.get(generator.nextInt(parcels.size())));
+            households.add(h);
+        }
+        
+        for (int turn = 0; turn < 60; turn++) {
+            for (Household h : households) {
+                h.grow();
+            }
+            for (Household h : households) {
+                if (generator.nextInt(4) == 0) {
+                    h.moveOut();
+                    h.moveIn(parcels.get(generator.nextInt(parcels.size())));
+                }
+            }
+            for (Parcel p : parcels) {
+                assertTrue(p.getAverageWealth() == bruteForceAverageWealth(p));
+            }
+        }
+    }
+    
     public void testUpdateBuildType() throws ParseException {
         WKTReader wktr = new WKTReader();
         Geometry geometry = wktr.read("POLYGON((0 0, 0 10, 10 10, 10 0, 0 0))");
@@ -194,4 +242,58 @@ public class ParcelTest extends TestCase {
         assertTrue(Math.abs(m.getParcelList().get(412).getUpgradePotential() - 0.9658773693035715) < 0.000001);
     }
       
+    
+    /**
+     * Computes the upgrade potential from the neighbours, without any table or cache.
+     */
+    private double expectedUpgradePotential(Parcel p) {
+        double totalArea = 0;
+        double superiorArea = 0;
+        for (Parcel n : bbtc.getNeighbours(p)) {
+            totalArea += n.getArea();
+            if (n.getBuildType() > p.getBuildType()) {
+                superiorArea += n.getArea();
+            }
+        }
+        return superiorArea / totalArea;
+    }
+    
+    public void testUpgradePotentialCache() throws ParseException, NoSuchTableException, DataSourceCreationException, DriverException {
+        Step s = new Step(2000, dataPathForTests, globalsPathForTests, outputPathForTests, bbtc, sdm, gps, dsf);
+        Manager m = s.getManager();
+        m.setBufferSize(15);
+        bbtc.setGraphBuilder(new NeighbourGraphBuilder(1));
+        WKTReader wktr = new WKTReader();
+        Random r = new Random(9);
+        for (int i = 0; i < 400; i++) {
+            int x = (i % 20) * 10;
+            int y = (i / 20) * 10;
+            Geometry square = wktr.read("POLYGON ((" + x + " " + y + ", " + (x + 10) + " " + y + ", " + (x + 10) + " " + (y + 10) + ", " + x + " " + (y + 10) + ", " + x + " " + y + "))");
+            m.addParcel(new Parcel(i, 1 + r.nextInt(5), 0.002 * r.nextInt(10), 1, 10, 10, 10, 50, 44109, "AB", square, bbtc));
+        }
+        bbtc.setNeighbours();
+        double[] areas = new double[NearbyBuildTypeCalculator.BUILD_TYPE_SLOTS];
+        
+        for (Parcel p : m.getParcelList()) {
+            assertEquals(expectedUpgradePotential(p), p.getUpgradePotential(areas), 0.000001);
+        }
+        assertEquals(0, bbtc.getUpgradePotentialHits());
+        assertEquals(400, bbtc.getUpgradePotentialMisses());
+        for (Parcel p : m.getParcelList()) {
+            p.getUpgradePotential(areas);
+        }
+        assertEquals(400, bbtc.getUpgradePotentialHits());
+        assertEquals(400, bbtc.getUpgradePotentialMisses());
+        
+        Parcel changed = m.getParcelList().get(210);
+        int oldBuildType = changed.getBuildType();
+        changed.updateBuildType(-1, -1, -1, -1);
+        assertTrue(changed.getBuildType() != oldBuildType);
+        bbtc.resetUpgradePotentialCounters();
+        for (Parcel p : m.getParcelList()) {
+            assertEquals(expectedUpgradePotential(p), p.getUpgradePotential(areas), 0.000001);
+        }
+        assertEquals(bbtc.getDependents(changed).length + 1, bbtc.getUpgradePotentialMisses());
+        assertEquals(400 - bbtc.getUpgradePotentialMisses(), bbtc.getUpgradePotentialHits());
+    }
 }
@@ -0,0 +1,129 @@
+/**
+ *
+ * Gdms-USM is a library dedicated to multi-agent simulation for modeling urban sprawl.
+ * It is based on the GDMS library. It uses the OrbisGIS renderer to display results.
+ *
+ * This version is developed at French IRSTV Institute and at LIENSs UMR 7266 laboratory
+ * (http://lienss.univ-larochelle.fr/) as part of the VegDUD project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-09-VILL-0007.
+ *
+ * Gdms-USM is distributed under GPL 3 license. It is maintained by the "Atelier SIG" team of
+ * the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Gdms-USM is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Gdms-USM is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Gdms-USM. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://trac.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.usm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Thomas Salliou
+ */
+public class QuickSelectTest extends TestCase {
+    
+    public QuickSelectTest(String testName) {
+        super(testName);
+    }
+    
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+    }
+    
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+    }
+    
+    /**
+     * Sorts the positions with a stable sort and the same exact comparison as GaussParcelComparator.
+     */
+    private List<Integer> stableSort(final double[] scores) {
+        List<Integer> positions = new ArrayList<Integer>();
+        for (int i = 0; i < scores.length; i++) {
+            positions.add(i);
+        }
+        Collections.sort(positions, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Double.compare(scores[a], scores[b]);
+            }
+        });
+        return positions;
+    }
+    
+    public void testSelectMatchesStableSort() {
+        Random generator = new Random(42);
+        for (int n = 1; n < 200; n += 7) {
+            double[] scores = new double[n];
+            for (int i = 0; i < n; i++) {
+                //few distinct values, so that there are a lot of ties
+                scores[i] = generator.nextInt(10) * 1.5;
+            }
+            List<Integer> sorted = stableSort(scores);
+            for (int k = 0; k < n; k++) {
+                assertTrue(QuickSelect.select(scores, n, k) == sorted.get(k));
+            }
+        }
+    }
+    
+    /**
+     * Near ties are ordered by score : a tolerance would make a cycle of these three.
+     */
+    public void testSelectNearTies() {
+        double[] scores = {1.4e-6, 0.7e-6, 0};
+        assertTrue(QuickSelect.select(scores, 3, 0) == 2);
+        assertTrue(QuickSelect.select(scores, 3, 1) == 1);
+        assertTrue(QuickSelect.select(scores, 3, 2) == 0);
+        List<Integer> sorted = stableSort(scores);
+        for (int k = 0; k < 3; k++) {
+            assertTrue(QuickSelect.select(scores, 3, k) == sorted.get(k));
+        }
+    }
+    
+    public void testSelectWithDistinctScores() {
+        Random generator = new Random(7);
+        int n = 5000;
+        double[] scores = new double[n];
+        for (int i = 0; i < n; i++) {
+            scores[i] = generator.nextDouble() * 300;
+        }
+        List<Integer> sorted = stableSort(scores);
+        for (int k = 0; k < n; k += 97) {
+            assertTrue(QuickSelect.select(scores, n, k) == sorted.get(k));
+        }
+        assertTrue(QuickSelect.select(scores, n, n - 1) == sorted.get(n - 1));
+    }
+    
+    public void testSelectSortedInput() {
+        int n = 1000;
+        double[] scores = new double[n];
+        for (int i = 0; i < n; i++) {
+            scores[i] = i;
+        }
+        assertTrue(QuickSelect.select(scores, n, 0) == 0);
+        assertTrue(QuickSelect.select(scores, n, 500) == 500);
+        assertTrue(QuickSelect.select(scores, n, 999) == 999);
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ *
+ * Gdms-USM is a library dedicated to multi-agent simulation for modeling urban sprawl.
+ * It is based on the GDMS library. It uses the OrbisGIS renderer to display results.
+ *
+ * This version is developed at French IRSTV Institute and at LIENSs UMR 7266 laboratory
+ * (http://lienss.univ-larochelle.fr/) as part of the VegDUD project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-09-VILL-0007.
+ *
+ * Gdms-USM is distributed under GPL 3 license. It is maintained by the "Atelier SIG" team of
+ * the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Gdms-USM is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Gdms-USM is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Gdms-USM. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://trac.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.usm;
+
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Thomas Salliou
+ */
+public class RandomStreamsTest extends TestCase {
+    
+    public RandomStreamsTest(String testName) {
+        super(testName);
+    }
+    
+    public void testSameSeedSameStreams() {
+        RandomStreams a = new RandomStreams(42);
+        RandomStreams b = new RandomStreams(42);
+        //Asking the streams in another order does not change them.
+        Random b2 = b.stream(RandomStreams.MOVING_IN, 3, 2);
+        Random a1 = a.stream(RandomStreams.MOVING_IN, 3, 1);
+        Random a2 = a.stream(RandomStreams.MOVING_IN, 3, 2);
+        Random b1 = b.stream(RandomStreams.MOVING_IN, 3, 1);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(a1.nextLong() == b1.nextLong());
+            assertTrue(a2.nextGaussian() == b2.nextGaussian());
+        }
+    }
+    
+    public void testIndependentStreams() {
+        RandomStreams r = new RandomStreams(42);
+        long first = r.stream(RandomStreams.IMMIGRATION, 1, 0).nextLong();
+        assertFalse(first == r.stream(RandomStreams.IMMIGRATION, 1, 1).nextLong());
+        assertFalse(first == r.stream(RandomStreams.IMMIGRATION, 2, 0).nextLong());
+        assertFalse(first == r.stream(RandomStreams.MOVING_IN, 1, 0).nextLong());
+        assertFalse(first == new RandomStreams(43).stream(RandomStreams.IMMIGRATION, 1, 0).nextLong());
+    }
+    
+    public void testGet() {
+        RandomStreams r = new RandomStreams(7);
+        Random step1 = r.get(RandomStreams.IMMIGRATION, 1);
+        assertSame(step1, r.get(RandomStreams.IMMIGRATION, 1));
+        assertTrue(r.get(RandomStreams.IMMIGRATION, 2).nextLong() == r.stream(RandomStreams.IMMIGRATION, 2, 0).nextLong());
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ *
+ * Gdms-USM is a library dedicated to multi-agent simulation for modeling urban sprawl.
+ * It is based on the GDMS library. It uses the OrbisGIS renderer to display results.
+ *
+ * This version is developed at French IRSTV Institute and at LIENSs UMR 7266 laboratory
+ * (http://lienss.univ-larochelle.fr/) as part of the VegDUD project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-09-VILL-0007.
+ *
+ * Gdms-USM is distributed under GPL 3 license. It is maintained by the "Atelier SIG" team of
+ * the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Gdms-USM is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Gdms-USM is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Gdms-USM. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://trac.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.usm;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Thomas Salliou
+ */
+public class ResidentListTest extends TestCase {
+    
+    public ResidentListTest(String testName) {
+        super(testName);
+    }
+    
+    public void testAddRemove() {
+        ResidentList residents = new ResidentList();
+        Household h1 = new Household(1,25,48700);
+        Household h2 = new Household(2,35,48700);
+        Household h3 = new Household(3,45,48700);
+        assertTrue(residents.add(h1));
+        assertTrue(residents.add(h2));
+        assertTrue(residents.add(h3));
+        assertFalse(residents.add(h2));
+        assertTrue(residents.size() == 3);
+        
+        assertTrue(residents.remove(h1));
+        assertFalse(residents.remove(h1));
+        assertFalse(residents.contains(h1));
+        assertTrue(residents.contains(h2));
+        assertTrue(residents.contains(h3));
+        //The last household took the free slot.
+        assertTrue(residents.get(0) == h3);
+        assertTrue(residents.get(1) == h2);
+    }
+    
+    public void testIteratorRemove() {
+        ResidentList residents = new ResidentList();
+        for (int i = 0; i < 10; i++) {
+            residents.add(new Household(i,25,48700));
+        }
+        Iterator<Household> i = residents.iterator();
+        Set<Integer> seen = new HashSet<Integer>();
+        while (i.hasNext()) {
+            Household h = i.next();
+            seen.add(h.getId());
+            if (h.getId() % 2 == 0) {
+                i.remove();
+            }
+        }
+        assertTrue(seen.size() == 10);
+        assertTrue(residents.size() == 5);
+        for (Household h : residents) {
+            assertTrue(h.getId() % 2 == 1);
+        }
+    }
+    
+    public void testSeveralParcels() {
+        ResidentList first = new ResidentList();
+        ResidentList second = new ResidentList();
+        Household h = new Household(1,25,48700);
+        Household other = new Household(2,25,48700);
+        first.add(other);
+        first.add(h);
+        second.add(new Household(3,25,48700));
+        assertFalse(second.contains(h));
+        assertFalse(second.remove(h));
+        
+        //the household moves from the first parcel to the second one
+        assertTrue(first.remove(h));
+        assertEquals(-1, h.getResidentSlot());
+        assertFalse(first.contains(h));
+        assertTrue(second.add(h));
+        assertTrue(second.contains(h));
+        assertFalse(first.contains(h));
+        assertTrue(first.contains(other));
+        assertFalse(second.add(h));
+        assertEquals(2, second.size());
+        
+        second.clear();
+        assertEquals(-1, h.getResidentSlot());
+        assertFalse(second.contains(h));
+    }
+    
+    public void testMatchesHashSet() {
+        Random r = new Random(3);
+        List<Household> population = new ArrayList<Household>();
+        for (int i = 0; i < 400; i++) {
+            population.add(new Household(i,25,48700));
+        }
+        List<ResidentList> lists = new ArrayList<ResidentList>();
+        List<Set<Household>> sets = new ArrayList<Set<Household>>();
+        for (int i = 0; i < 40; i++) {
+            lists.add(new ResidentList());
+            sets.add(new HashSet<Household>());
+        }
+        //Households move at random between the lists, a household being in one list at most.
+        for (int step = 0; step < 20000; step++) {
+            Household h = population.get(r.nextInt(population.size()));
+            int from = -1;
+            for (int i = 0; i < sets.size() && from < 0; i++) {
+                if (sets.get(i).contains(h)) {
+                    from = i;
+                }
+            }
+            if (from >= 0) {
+                assertTrue(lists.get(from).remove(h));
+                sets.get(from).remove(h);
+            }
+            if (r.nextInt(4) != 0) {
+                int to = r.nextInt(lists.size());
+                assertTrue(lists.get(to).add(h));
+                sets.get(to).add(h);
+            }
+        }
+        for (int i = 0; i < lists.size(); i++) {
+            ResidentList residents = lists.get(i);
+            assertEquals(sets.get(i), new HashSet<Household>(residents));
+            assertEquals(sets.get(i).size(), residents.size());
+            for (int j = 0; j < residents.size(); j++) {
+                assertEquals(j, residents.get(j).getResidentSlot());
+            }
+        }
+    }
+}
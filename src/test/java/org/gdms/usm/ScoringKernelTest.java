@@ -0,0 +1,110 @@
+/**
+ *
+ * Gdms-USM is a library dedicated to multi-agent simulation for modeling urban sprawl.
+ * It is based on the GDMS library. It uses the OrbisGIS renderer to display results.
+ *
+ * This version is developed at French IRSTV Institute and at LIENSs UMR 7266 laboratory
+ * (http://lienss.univ-larochelle.fr/) as part of the VegDUD project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-09-VILL-0007.
+ *
+ * Gdms-USM is distributed under GPL 3 license. It is maintained by the "Atelier SIG" team of
+ * the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Gdms-USM is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Gdms-USM is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Gdms-USM. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://trac.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.usm;
+
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Thomas Salliou
+ */
+public class ScoringKernelTest extends TestCase {
+    
+    public ScoringKernelTest(String testName) {
+        super(testName);
+    }
+    
+    private int[] amenities;
+    private int[] constructibility;
+    private int[] buildType;
+    private double[] idealHousingParts;
+    
+    private void fill(int size) {
+        Random r = new Random(size);
+        amenities = new int[size];
+        constructibility = new int[size];
+        buildType = new int[size];
+        for (int i = 0; i < size; i++) {
+            amenities[i] = r.nextInt(101);
+            constructibility[i] = r.nextInt(101);
+            buildType[i] = 1 + r.nextInt(7);
+        }
+        idealHousingParts = new double[NearbyBuildTypeCalculator.BUILD_TYPE_SLOTS];
+        for (int bt = 0; bt < idealHousingParts.length; bt++) {
+            idealHousingParts[bt] = 0.35*(100.0 - (double) r.nextInt(101));
+        }
+        idealHousingParts[7] = Double.NaN;
+    }
+
+    /**
+     * Test that both kernels give the same scores, whatever the remainder of the unrolled loop.
+     */
+    public void testSameScores() {
+        ScoringKernel scalar = new ScalarScoringKernel();
+        ScoringKernel unrolled = new UnrolledScoringKernel();
+        for (int size = 0; size < 12; size++) {
+            fill(size + 1000);
+            double[] expected = new double[amenities.length];
+            double[] actual = new double[amenities.length];
+            scalar.score(amenities.length, amenities, constructibility, buildType, idealHousingParts, 0.4, 0.25, expected);
+            unrolled.score(amenities.length, amenities, constructibility, buildType, idealHousingParts, 0.4, 0.25, actual);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(Double.doubleToLongBits(expected[i]), Double.doubleToLongBits(actual[i]));
+                assertEquals(buildType[i] == 7, Double.isNaN(actual[i]));
+            }
+        }
+    }
+    
+    /**
+     * Test that both kernels only score the first size parcels, leaving the rest of the array untouched.
+     */
+    public void testScoresFirstParcelsOnly() {
+        ScoringKernel[] kernels = {new ScalarScoringKernel(), new UnrolledScoringKernel()};
+        fill(100000);
+        double[] expected = new double[amenities.length];
+        kernels[0].score(amenities.length, amenities, constructibility, buildType, idealHousingParts, 0.4, 0.25, expected);
+        for (ScoringKernel kernel : kernels) {
+            for (int size = 99990; size <= amenities.length; size += 3) {
+                double[] scores = new double[amenities.length];
+                Arrays.fill(scores, -1);
+                kernel.score(size, amenities, constructibility, buildType, idealHousingParts, 0.4, 0.25, scores);
+                for (int i = 0; i < size; i++) {
+                    assertEquals(Double.doubleToLongBits(expected[i]), Double.doubleToLongBits(scores[i]));
+                }
+                for (int i = size; i < scores.length; i++) {
+                    assertEquals(-1.0, scores[i], 0.0);
+                }
+            }
+        }
+    }
+}
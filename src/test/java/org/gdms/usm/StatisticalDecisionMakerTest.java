@@ -177,9 +177,29 @@ public class StatisticalDecisionMakerTest extends TestCase {
         sdm.setManager(m);
         Household futurelyDisappearingHousehold = new Household(4,57,65000);
         sdm.addHousehold(futurelyDisappearingHousehold);
-        assertTrue(sdm.getDissatisfactionMemories().containsKey(futurelyDisappearingHousehold));
+        assertTrue(sdm.getDissatisfactionMemories().contains(futurelyDisappearingHousehold.getId()));
         sdm.deleteHousehold(futurelyDisappearingHousehold);
-        assertTrue(sdm.getDissatisfactionMemories().isEmpty());
+        assertTrue(sdm.getDissatisfactionMemories().size() == 0);
+    }
+    
+    public void testMemoryOfUnknownHousehold() {
+        Step s = new Step(2000, dataPathForTests, globalsPathForTests, outputPathForTests, bbtc, sdm, gps, dsf);
+        Household stranger = new Household(8,30,40000);
+        assertTrue(sdm.getDissatisfactionMemory(stranger).isEmpty());
+        sdm.clearDissatisfactionMemory(stranger);
+        assertTrue(sdm.getDissatisfactionMemory(stranger).isEmpty());
+    }
+    
+    public void testHouseholdAddedBeforeGlobals() throws DriverLoadException, DataSourceCreationException, DriverException {
+        Step s = new Step(2000, dataPathForTests, globalsPathForTests, outputPathForTests, bbtc, sdm, gps, dsf);
+        Manager m = s.getManager();
+        Household early = new Household(5,40,50000);
+        sdm.addHousehold(early);
+        m.initializeGlobals();
+        assertTrue(sdm.getDissatisfactionMemories().getMemory() == m.getHouseholdMemory());
+        assertTrue(sdm.getDissatisfactionMemories().contains(early.getId()));
+        sdm.addToDissatisfactionQueue(early, 1.5);
+        assertTrue(sdm.getCumulatedDissatisfaction(early) == 1.5);
     }
     
     public void testIsMoving() throws ParseException, DriverLoadException, DataSourceCreationException, DriverException {
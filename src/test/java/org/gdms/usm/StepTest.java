@@ -64,6 +64,7 @@ public class StepTest extends TestCase {
         new File(outputPathForTests+"/Plot.gdms").delete();
         new File(outputPathForTests+"/PlotState.gdms").delete();
         new File(outputPathForTests+"/Step.gdms").delete();
+        new File(dataPathForTests + ".neighbours").delete();
     }
     
     private String dataPathForTests = "src/test/resources/initialdatabase.gdms";
@@ -75,6 +76,30 @@ public class StepTest extends TestCase {
     private SchellingDecisionMaker schdm = new SchellingDecisionMaker();
     private GaussParcelSelector gps = new GaussParcelSelector();
     
+    public void testInitializeReadsNeighbourCache() throws DataSourceCreationException, DriverException, NoSuchTableException, NonEditableDataSourceException, IOException, IndexException {
+        BufferBuildTypeCalculator computed = new BufferBuildTypeCalculator();
+        Step s = new Step(2000, dataPathForTests, globalsPathForTests, outputPathForTests, computed, sdm, gps, dsf);
+        s.initialize();
+        File cacheFile = new File(dataPathForTests + ".neighbours");
+        assertTrue(cacheFile.exists());
+        
+        //A graph computed again would be stored again, changing the modification date.
+        assertTrue(cacheFile.setLastModified(1000));
+        BufferBuildTypeCalculator loaded = new BufferBuildTypeCalculator();
+        Step again = new Step(2000, dataPathForTests, globalsPathForTests, outputPathForTests, loaded, new StatisticalDecisionMaker(), new GaussParcelSelector(), new DataSourceFactory(outputPathForTests + "/gdms"));
+        again.initialize();
+        assertTrue(cacheFile.lastModified() == 1000);
+        
+        for (int i = 0; i < s.getManager().getParcelList().size(); i++) {
+            Parcel[] expected = computed.getNeighbours(s.getManager().getParcelList().get(i));
+            Parcel[] actual = loaded.getNeighbours(again.getManager().getParcelList().get(i));
+            assertTrue(expected.length == actual.length);
+            for (int j = 0; j < expected.length; j++) {
+                assertTrue(expected[j].getId() == actual[j].getId());
+            }
+        }
+    }
+    
     public void testInitialize() throws DataSourceCreationException, DriverException, NoSuchTableException, NonEditableDataSourceException, IOException, IndexException {
         Step s = new Step(2000, dataPathForTests, globalsPathForTests, outputPathForTests, bbtc, sdm, gps, dsf);
         Manager m = s.getManager();
@@ -141,13 +166,57 @@ public class StepTest extends TestCase {
         BufferBuildTypeCalculator a = (BufferBuildTypeCalculator) m.getNbtc();
         a.setManager(m);
         Parcel[] myNeighbours = a.getNeighbours(m.getParcelList().get(3425));
+        //The graph builder lists the neighbours by ascending index.
         assertTrue(myNeighbours.length == 7);
-        assertTrue(myNeighbours[0].getId() == 3440);
+        assertTrue(myNeighbours[0].getId() == 3382);
         assertTrue(myNeighbours[1].getId() == 3383);
-        assertTrue(myNeighbours[2].getId() == 3382);
-        assertTrue(myNeighbours[3].getId() == 3439);
-        assertTrue(myNeighbours[4].getId() == 3404);
-        assertTrue(myNeighbours[5].getId() == 3438);
-        assertTrue(myNeighbours[6].getId() == 3403);
+        assertTrue(myNeighbours[2].getId() == 3403);
+        assertTrue(myNeighbours[3].getId() == 3404);
+        assertTrue(myNeighbours[4].getId() == 3438);
+        assertTrue(myNeighbours[5].getId() == 3439);
+        assertTrue(myNeighbours[6].getId() == 3440);
+    }
+    
+    public void testAverageWealthOverSimulation() throws DataSourceCreationException, DriverException, NoSuchTableException, NonEditableDataSourceException, IOException, IndexException {
+        Step s = new Step(2000, dataPathForTests, globalsPathForTests, outputPathForTests, bbtc, sdm, gps, dsf);
+        final Manager m = s.getManager();
+        m.setSeed(5);
+        final int[] checkedSteps = new int[1];
+        s.registerStepListener(new StepListener() {
+            public void nextTurn(int cT, int nT, int pop, int dead, int newb, int mov) {
+                assertAverageWealths(m);
+                checkedSteps[0]++;
+            }
+            public void initializationDone() {
+            }
+            public void householdDisappeared(Household h) {
+            }
+            public void simulationDone() {
+            }
+        });
+        s.initialize();
+        assertAverageWealths(m);
+        try {
+            for (int i = 0; i < 10; i++) {
+                s.wholeStep();
+            }
+        } finally {
+            m.closeOutputDatabase();
+        }
+        assertEquals(10, checkedSteps[0]);
+    }
+    
+    /**
+     * Checks the incremental average wealth of every parcel against a full recomputation.
+     */
+    private void assertAverageWealths(Manager m) {
+        for (Parcel p : m.getParcelList()) {
+            int total = 0;
+            for (Household h : p.getHouseholdList()) {
+                total += h.getWealth();
+            }
+            int expected = p.getLocalPopulation() == 0 ? 0 : total / p.getLocalPopulation();
+            assertEquals(expected, p.getAverageWealth());
+        }
     }
 }